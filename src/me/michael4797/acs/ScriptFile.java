@@ -1,12 +1,15 @@
 package me.michael4797.acs;
 
+import java.nio.ByteBuffer;
+
 import me.michael4797.parse.ByteStream;
 import me.michael4797.parse.Grammar;
 import me.michael4797.parse.Lexer;
+import me.michael4797.parse.LexerScanners;
 import me.michael4797.parse.Parser;
 import me.michael4797.parse.ParserException;
 import me.michael4797.parse.ParserToken;
-import me.michael4797.wad.WadFile;
+import me.michael4797.wad.LumpContainer;
 
 public class ScriptFile {
 	
@@ -15,9 +18,9 @@ public class ScriptFile {
 	static {
 		
 		//The massive, sprawling, likely over-complicated ACS Grammar
-		acsGrammar.addLexerIgnoreRule("WhiteSpace", "[\t\r\n \\x00]+");
-		acsGrammar.addLexerIgnoreRule("SingleLineComment", "//[^\n]*\n");
-		acsGrammar.addLexerIgnoreRule("MultiLineComment", "/\\*[^\\*]*(\\*[^/][^\\*]*)*\\*/");
+		acsGrammar.addLexerIgnoreRule("WhiteSpace", LexerScanners.whiteSpace);
+		acsGrammar.addLexerIgnoreRule("SingleLineComment", LexerScanners.singleLineComment);
+		acsGrammar.addLexerIgnoreRule("MultiLineComment", LexerScanners.multiLineComment);
 
 		acsGrammar.addParserRule("GlobalList", "Global GlobalList | /-");
 		acsGrammar.addParserRule("Global", "Declaration | Script | Function");
@@ -73,21 +76,17 @@ public class ScriptFile {
 		acsGrammar.addParserRule("RightHandExpression", "BinaryAssignment | TernaryExpression");
 		acsGrammar.addParserRule("TernaryExpression", "TernaryOperation | LogicalOrExpression");
 		acsGrammar.addParserRule("TernaryOperation", "LogicalOrExpression Ternary TernaryExpression Colon TernaryExpression");
-		acsGrammar.addParserRule("LogicalOrExpression", "LogicalAndExpression LogicalOr LogicalOrExpression | LogicalAndExpression");
-		acsGrammar.addParserRule("LogicalAndExpression", "BinaryOrExpression LogicalAnd LogicalAndExpression | BinaryOrExpression");
-		acsGrammar.addParserRule("BinaryOrExpression", "BinaryXorExpression BinaryOr BinaryOrExpression | BinaryXorExpression");
-		acsGrammar.addParserRule("BinaryXorExpression", "BinaryAndExpression BinaryXor BinaryXorExpression | BinaryAndExpression");
-		acsGrammar.addParserRule("BinaryAndExpression", "EqualityExpression BinaryAnd BinaryAndExpression | EqualityExpression");
-		acsGrammar.addParserRule("EqualityExpression", "RelationalExpression EqualityOperator EqualityExpression | RelationalExpression");
-		acsGrammar.addParserRule("EqualityOperator", "LogicalEquals | NotEquals");
-		acsGrammar.addParserRule("RelationalExpression", "ShiftExpression RelationalOperator RelationalExpression | ShiftExpression");
-		acsGrammar.addParserRule("RelationalOperator", "GreaterThan | GreaterThanEquals | LessThan | LessThanEquals");
-		acsGrammar.addParserRule("ShiftExpression", "AdditiveExpression ShiftOperator ShiftExpression | AdditiveExpression");
-		acsGrammar.addParserRule("ShiftOperator", "LeftShift | RightShift");
-		acsGrammar.addParserRule("AdditiveExpression", "MultiplicativeExpression AdditiveOperator AdditiveExpression | MultiplicativeExpression");
-		acsGrammar.addParserRule("AdditiveOperator", "Plus | Minus");
-		acsGrammar.addParserRule("MultiplicativeExpression", "UnaryExpression MultiplicativeOperator MultiplicativeExpression | UnaryExpression");
-		acsGrammar.addParserRule("MultiplicativeOperator", "Multiply | Divide | Remainder");
+		acsGrammar.addPrecedenceRule("UnaryExpression",
+				"LogicalOrExpression LogicalOr",
+				"LogicalAndExpression LogicalAnd",
+				"BinaryOrExpression BinaryOr",
+				"BinaryXorExpression BinaryXor",
+				"BinaryAndExpression BinaryAnd",
+				"EqualityExpression LogicalEquals NotEquals",
+				"RelationalExpression GreaterThan GreaterThanEquals LessThan LessThanEquals",
+				"ShiftExpression LeftShift RightShift",
+				"AdditiveExpression Plus Minus",
+				"MultiplicativeExpression Multiply Divide Remainder");
 		acsGrammar.addParserRule("UnaryExpression", "ParentheticalExpression | UnaryAssignment | UnaryLogicalNot | UnaryBinaryNot | UnaryPlus | UnaryMinus | FunctionCall | SingleValue | LeftHandOperand");
 		acsGrammar.addParserRule("ParentheticalExpression", "OpenParenthesis RightHandExpression CloseParenthesis");
 		acsGrammar.addParserRule("CastExpression", "CastCharacter RightHandExpression");
@@ -190,7 +189,7 @@ public class ScriptFile {
 		acsGrammar.addLexerRule("Character", "\'(\\\\0|\\\\\\\\|\\\\n|\\\\t|.)\'");
 		acsGrammar.addLexerRule("Float", "[0-9]+\\.[0-9]+");
 		acsGrammar.addLexerRule("Integer", "([1-9]+[0-9]*)|[0]");
-		acsGrammar.addLexerRule("QuotedString", "\"([^\"\\\\]*(\\\\.[^\"\\\\]*)*)\"");
+		acsGrammar.addLexerRule("QuotedString", LexerScanners.quotedString);
 		acsGrammar.addLexerRule("Identifier", "[A-Za-z_]+[A-Za-z0-9_]*");
 	}
 	
@@ -198,12 +197,12 @@ public class ScriptFile {
 	private ParserToken ast;
 
 	/**
-	 * Loads ACS Script from a WAD and parses them into an AST with the ACS Grammar.
-	 * @param wad The WAD file to parse.
+	 * Loads ACS Script from a WAD, or a map within one, and parses them into an AST with the ACS Grammar.
+	 * @param wad The lumps containing the SCRIPTS lump to parse.
 	 */
-	public ScriptFile(WadFile wad) {
+	public ScriptFile(LumpContainer wad) {
 
-		byte[] scriptData = wad.getLump("scripts");
+		ByteBuffer scriptData = wad.getLump("scripts");
 		if(scriptData == null)
 			throw new IllegalArgumentException("The specified wad does not contain ACS source code");
 
@@ -37,7 +37,7 @@ public class ScriptTokenStream implements TokenStream{
 			if(index < macro.size()) {
 				
 				LexerToken token = macro.get(index++);
-				return new LexerToken(token.name, token.value);
+				return new LexerToken(token.name, token.getValue());
 			}
 			
 			macro = null;
@@ -50,7 +50,7 @@ public class ScriptTokenStream implements TokenStream{
 			if(next.name.equals("Define")) {
 				
 				//Split by whitespace
-				String[] split = next.value.split("[\t\r\n \\x00]+");
+				String[] split = next.getValue().split("[\t\r\n \\x00]+");
 								
 				ArrayList<LexerToken> macro = new ArrayList<>();
 				//Combine everything after the name of the define
@@ -59,7 +59,7 @@ public class ScriptTokenStream implements TokenStream{
 					buffer.append(split[i]);
 				
 				//Lex the remaining part of the string into tokens
-				Lexer lexer = new Lexer(new StringStream(buffer.toString()), in.rules);
+				Lexer lexer = in.withSource(new StringStream(buffer.toString()));
 				
 				try {
 					
@@ -85,12 +85,12 @@ public class ScriptTokenStream implements TokenStream{
 		}
 		
 		//If we parsed a #define macro, return the macro instead
-		macro = macros.get(next.value);
+		macro = macros.isEmpty() ? null : macros.get(next.getValue());
 		if(macro != null) {
 		
 			index = 1;
 			LexerToken token = macro.get(0);
-			return new LexerToken(token.name, token.value);	
+			return new LexerToken(token.name, token.getValue());	
 		}
 
 		return next;
@@ -1,75 +1,364 @@
 package me.michael4797.calculator;
 
 import java.io.IOException;
-import java.util.Enumeration;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.PriorityQueue;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import me.michael4797.acs.ScriptFile;
 import me.michael4797.calculator.visitor.MapScriptsVisitor;
+import me.michael4797.udmf.MapSnapshot;
 import me.michael4797.udmf.UniversalDoomMap;
+import me.michael4797.wad.PackEntry;
+import me.michael4797.wad.PackFile;
 import me.michael4797.wad.WadFile;
+import me.michael4797.wad.WadMap;
 
 /**
- * Calculates the size of UDMF Doom maps in map units found in a specified pk3 file.
+ * Calculates the size of UDMF, Doom and Hexen format maps in map units found in the specified pk3 and wad files.
+ * Directories are searched recursively for pk3 and wad files, and every map found is calculated on a shared pool of
+ * worker threads before being merged into a single report.
  * Only the 'playable area' is calculated. This excludes any death pits or inaccessible
  * areas of the map.
  */
 public class MapSizeCalculator{
 
+	/**
+	 * The only lumps that are read from the wads in a pk3, everything else is skipped.
+	 */
+	private static final HashSet<String> mapLumps = new HashSet<>(Arrays.asList("TEXTMAP", "SCRIPTS", "MAPINFO",
+			"THINGS", "LINEDEFS", "SIDEDEFS", "VERTEXES", "SECTORS"));
+
+	/**
+	 * Identifies the calculation in cached results, this must be changed whenever the calculation changes in a way
+	 * that affects its results.
+	 */
+	private static final String VERSION = "1";
+	
+	/**
+	 * The default size limit of the result cache, in megabytes.
+	 */
+	private static final long DEFAULT_CACHE_SIZE = 64;
+	
 	public static void main(String[] args) throws IOException {
 
-		if(args.length == 0) {
+		ArrayList<Path> files = new ArrayList<>();
+		Path cacheDirectory = null;
+		long cacheSize = DEFAULT_CACHE_SIZE;
+		Path snapshots = null;
+		for(int i = 0; i < args.length; ++i) {
 			
-			System.out.println("Specify the pk3 file to calculate as a command line argument");
+			if(args[i].equals("-cache") && i + 1 < args.length)
+				cacheDirectory = Paths.get(args[++i]);
+			else if(args[i].equals("-cachesize") && i + 1 < args.length)
+				cacheSize = parseSize(args[++i]);
+			else if(args[i].equals("-snapshots") && i + 1 < args.length)
+				snapshots = Files.createDirectories(Paths.get(args[++i]));
+			else if(args[i].equals("-grammar"))
+				UniversalDoomMap.setUseGrammar(true);
+			else if(args[i].equals("-pipeline"))
+				UniversalDoomMap.setPipelined(true);
+			else
+				findFiles(Paths.get(args[i]), files);
+		}
+		
+		if(files.isEmpty() || cacheSize < 0) {
+			
+			System.out.println("Specify the pk3 or wad files, or directories containing them, to calculate as command line arguments");
+			System.out.println("Use -cache <directory> to reuse the results of previous runs, and -cachesize <megabytes> to limit its size");
+			System.out.println("Use -snapshots <directory> to keep parsed maps for later runs");
+			System.out.println("Use -grammar to parse TEXTMAP lumps with the slower TEXTMAP Grammar, to check the results against");
+			System.out.println("Use -pipeline to lex each TEXTMAP lump on its own thread, which helps when a single huge map takes the longest");
 			return;
 		}
 		
-		ZipFile file = new ZipFile(args[0]);
-		Enumeration<? extends ZipEntry> entries = file.entries();
-		MapScriptsVisitor visitor = new MapScriptsVisitor();
+		ResultCache cache = cacheDirectory != null ? new ResultCache(cacheDirectory, cacheSize * 1024 * 1024, VERSION) : null;
+		
+		//When there's more than one file, each map in the report needs to say where it came from
+		boolean batch = files.size() > 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, (r) -> {
+			
+			Thread thread = new Thread(r, "MapSizeCalculator");
+			thread.setDaemon(true);
+			return thread;
+		});
 		
-		PriorityQueue<MapSizeInfo> queue = new PriorityQueue<>();
-		while(entries.hasMoreElements()) {
+		ArrayList<Future<MapSizeInfo>> results = new ArrayList<>();
+		try {
 			
-			ZipEntry entry = entries.nextElement();
-			if(entry.getName().endsWith(".wad")) {
+			for(Path path: files) {
 				
-				//We found a wad in the pk3
-				WadFile wad = new WadFile(file.getInputStream(entry));
-				if(wad.getLump("textmap") != null) {
-					
-					//We found a UMDF map
-					UniversalDoomMap map = new UniversalDoomMap(wad);
+				String source = batch ? path.toString() : null;
+				try {
 					
-					HashSet<Integer> deathPits;
-					if(wad.getLump("scripts") != null) {
+					if(path.getFileName().toString().toLowerCase().endsWith(".wad")) {
 						
-						//The UDMF map has scripts we can parse
-						ScriptFile scripts = new ScriptFile(wad);
-						deathPits = scripts.getAbstractSyntaxTree().accept(visitor);
+						//A single wad can be mapped directly instead of being read into memory
+						submit(new WadFile(path), source, cache, snapshots, executor, results);
+						continue;
 					}
-					else {
+					
+					PackFile file = new PackFile(path);
+					ArrayList<PackEntry> wads = new ArrayList<>();
+					for(PackEntry entry: file.getEntries())
+						if(entry.name.toLowerCase().endsWith(".wad")) //We found a wad in the pk3
+							wads.add(entry);
+					
+					//Inflate the wads on the shared pool, the maps in them are queued up as each wad is ready
+					try(WadLoader loader = new WadLoader(file, wads, mapLumps::contains, executor, threads * 2)) {
 						
-						deathPits = new HashSet<Integer>();
+						for(WadFile wad = nextWad(loader, path); wad != null; wad = nextWad(loader, path))
+							submit(wad, source, cache, snapshots, executor, results);
 					}
+				} catch (IOException | RuntimeException e) {
 					
-					MapGraph graph = new MapGraph(map, deathPits);
-					double area = graph.getArea();
-					//Print some progress info so we know we're not stuck forever
-					System.out.println(map.mapCode + '\t' + map.mapName + "\tcompleted");
-								
-					queue.add(new MapSizeInfo(String.format("%-8s\t%-22s", map.mapCode, map.mapName), area));
+					//One broken file shouldn't stop the rest of the batch
+					System.err.println("Error reading " + path + ": " + e);
 				}
 			}
+			
+			PriorityQueue<MapSizeInfo> queue = new PriorityQueue<>();
+			for(Future<MapSizeInfo> result: results) {
+				
+				MapSizeInfo info = result.get();
+				if(info != null)
+					queue.add(info);
+			}
+			
+			System.out.println("Maps By Size: ");
+			while(!queue.isEmpty())
+				System.out.println(queue.poll());
+			
+			if(cache != null)
+				cache.trim();
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			
+			throw new RuntimeException("Error calculating map", e.getCause());
+		} finally {
+			
+			executor.shutdownNow();
 		}
+	}
+	
+	/**
+	 * Parses the size limit of the result cache.
+	 * @param size The size in megabytes.
+	 * @return The size, or -1 if it isn't a valid size.
+	 */
+	private static long parseSize(String size) {
 		
-		file.close();
-
-		System.out.println("Maps By Size: ");
-		while(!queue.isEmpty())
-			System.out.println(queue.poll());		
+		try {
+			
+			long megabytes = Long.parseLong(size);
+			if(megabytes >= 0 && megabytes <= Long.MAX_VALUE / (1024 * 1024))
+				return megabytes;
+		} catch (NumberFormatException e) {}
+		
+		System.out.println("Invalid cache size " + size);
+		return -1;
+	}
+	
+	/**
+	 * Retrieves the next wad from a pk3, reporting and skipping any wads that can't be loaded.
+	 * @param loader The loader of the wads in the pk3.
+	 * @param path The pk3.
+	 * @return The next wad, or null if there are none left.
+	 * @throws IOException If the thread was interrupted while loading.
+	 */
+	private static WadFile nextWad(WadLoader loader, Path path) throws IOException {
+		
+		while(true) {
+			
+			try {
+				
+				return loader.next();
+			} catch (IOException | RuntimeException e) {
+				
+				//Being interrupted stops the whole pk3, but a broken wad only loses its own maps
+				if(Thread.currentThread().isInterrupted())
+					throw e;
+				
+				System.err.println("Error reading " + path + ": " + e);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the specified file to the list, or if it is a directory, every pk3 and wad file within it.
+	 * @param path The file or directory.
+	 * @param files The list to add the files to.
+	 * @throws IOException If there was an error reading a directory.
+	 */
+	private static void findFiles(Path path, ArrayList<Path> files) throws IOException {
+		
+		if(!Files.isDirectory(path)) {
+			
+			files.add(path);
+			return;
+		}
+		
+		try(Stream<Path> walk = Files.walk(path)) {
+			
+			walk.filter(Files::isRegularFile).filter((file) -> {
+				
+				String name = file.getFileName().toString().toLowerCase();
+				return name.endsWith(".pk3") || name.endsWith(".wad");
+			}).sorted().forEach(files::add);
+		}
+	}
+	
+	/**
+	 * Queues every map in the specified wad to be calculated.
+	 * @param wad The wad to search for maps.
+	 * @param source The file the wad came from, or null if it doesn't need to be included in the report.
+	 * @param cache The cache of previous results, or null if results aren't cached.
+	 * @param snapshots The directory containing snapshots of parsed maps, or null if snapshots aren't used.
+	 * @param executor The executor to calculate the maps on.
+	 * @param results The list to add the pending results to.
+	 */
+	private static void submit(WadFile wad, String source, ResultCache cache, Path snapshots, ExecutorService executor, ArrayList<Future<MapSizeInfo>> results) {
+		
+		for(WadMap wadMap: wad.getMaps())
+			results.add(executor.submit(() -> calculate(wad, wadMap, source, cache, snapshots)));
+	}
+	
+	/**
+	 * Calculates the size of a single map, called from the worker threads.
+	 * @param wad The wad containing the map.
+	 * @param wadMap The lumps making up the map.
+	 * @param source The file the wad came from, or null if it doesn't need to be included in the report.
+	 * @param cache The cache of previous results, or null if results aren't cached.
+	 * @param snapshots The directory containing snapshots of parsed maps, or null if snapshots aren't used.
+	 * @return The size of the map, or null if the map couldn't be calculated.
+	 */
+	private static MapSizeInfo calculate(WadFile wad, WadMap wadMap, String source, ResultCache cache, Path snapshots) {
+		
+		try {
+			
+			String key = null;
+			if(cache != null) {
+				
+				//Maps whose lumps haven't changed since a previous run don't need to be parsed at all
+				key = cache.getKey(wad, wadMap, mapLumps);
+				ResultCache.Result result = cache.get(key);
+				if(result != null) {
+					
+					System.out.println(result.mapCode + '\t' + result.mapName + "\tcached");
+					return getInfo(result, source);
+				}
+			}
+			
+			UniversalDoomMap map = null;
+			Path snapshot = null;
+			if(snapshots != null) {
+				
+				//The map code and name come from MAPINFO, which is part of the key, so they're always right
+				snapshot = snapshots.resolve(ResultCache.getKey(wad, wadMap, mapLumps, "snapshot" + MapSnapshot.VERSION) + ".udms");
+				if(Files.exists(snapshot))
+					map = readSnapshot(snapshot);
+			}
+			
+			if(map == null) {
+				
+				//We found a map, binary maps are converted to UDMF as they're loaded
+				map = new UniversalDoomMap(wad, wadMap);
+				if(snapshot != null)
+					writeSnapshot(map, snapshot);
+			}
+			
+			HashSet<Integer> deathPits;
+			if(wadMap.getLump("scripts") != null) {
+				
+				//The map has scripts we can parse
+				ScriptFile scripts = new ScriptFile(wadMap);
+				deathPits = scripts.getAbstractSyntaxTree().accept(new MapScriptsVisitor());
+			}
+			else {
+					
+				deathPits = new HashSet<Integer>();
+			}
+			
+			MapGraph graph = new MapGraph(map, deathPits);
+			double area = graph.getArea();
+			//Print some progress info so we know we're not stuck forever
+			System.out.println(map.mapCode + '\t' + map.mapName + "\tcompleted");
+			
+			ResultCache.Result result = new ResultCache.Result(map.mapCode, map.mapName, area);
+			if(cache != null)
+				cache.put(key, result);
+			
+			return getInfo(result, source);
+		} catch (RuntimeException e) {
+			
+			System.err.println("Error calculating " + wadMap.name + (source == null ? "" : " in " + source) + ": " + e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads a snapshot of a parsed map. An unreadable snapshot is deleted, so it's replaced once the map is parsed again.
+	 * @param snapshot The snapshot file.
+	 * @return The map, or null if the snapshot couldn't be read and the map needs to be parsed again.
+	 */
+	private static UniversalDoomMap readSnapshot(Path snapshot) {
+		
+		try {
+			
+			return MapSnapshot.read(snapshot);
+		} catch (IOException e) {
+			
+			System.err.println("Ignoring unreadable snapshot " + snapshot + ": " + e);
+		}
+		
+		try {
+			
+			Files.deleteIfExists(snapshot);
+		} catch (IOException e) {
+			
+			System.err.println("Error deleting snapshot " + snapshot + ": " + e);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Writes a snapshot of a parsed map, errors are reported but otherwise ignored since the map can always be parsed again.
+	 * @param map The map.
+	 * @param snapshot The snapshot file.
+	 */
+	private static void writeSnapshot(UniversalDoomMap map, Path snapshot) {
+		
+		try {
+			
+			MapSnapshot.write(map, snapshot);
+		} catch (IOException e) {
+			
+			System.err.println("Error writing snapshot " + snapshot + ": " + e);
+		}
+	}
+	
+	/**
+	 * Creates the entry for a map in the report.
+	 * @param result The result of calculating the map.
+	 * @param source The file the map came from, or null if it doesn't need to be included in the report.
+	 * @return The entry in the report.
+	 */
+	private static MapSizeInfo getInfo(ResultCache.Result result, String source) {
+		
+		String name = String.format("%-8s\t%-22s", result.mapCode, result.mapName);
+		return new MapSizeInfo(source == null ? name : name + '\t' + source, result.area);
 	}
 }
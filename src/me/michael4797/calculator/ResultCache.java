@@ -0,0 +1,239 @@
+package me.michael4797.calculator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import me.michael4797.wad.WadFile;
+import me.michael4797.wad.WadMap;
+
+/**
+ * An on-disk cache of calculated map sizes, keyed by a hash of the lumps the calculation reads.
+ * Each result is stored in its own file, whose last modified time is updated whenever it is read,
+ * so that the least recently used results can be evicted once the cache grows past its size limit.
+ */
+public class ResultCache {
+
+	private static final String SUFFIX = ".area";
+	
+	private final Path directory;
+	private final long maxSize;
+	private final String version;
+	
+	/**
+	 * Opens the cache in the specified directory, creating the directory if it doesn't exist.
+	 * @param directory The directory the results are stored in.
+	 * @param maxSize The maximum total size of the cached results, in bytes.
+	 * @param version The version of the calculator, results from other versions are never returned.
+	 * @throws IOException If the directory could not be created.
+	 */
+	public ResultCache(Path directory, long maxSize, String version) throws IOException {
+		
+		this.directory = Files.createDirectories(directory);
+		this.maxSize = maxSize;
+		this.version = version;
+	}
+	
+	/**
+	 * Computes the key of the specified map, from the contents of its lumps, the MAPINFO lump of its wad,
+	 * the name of its marker and the version of the calculator.
+	 * @param wad The wad containing the map.
+	 * @param map The lumps making up the map.
+	 * @param lumpNames The names of the lumps the calculation reads, lumps the map doesn't have are skipped.
+	 * @return The key, as a hexadecimal String.
+	 */
+	public String getKey(WadFile wad, WadMap map, Collection<String> lumpNames) {
+		
+		return getKey(wad, map, lumpNames, version);
+	}
+	
+	/**
+	 * Computes a key for the specified map, from the contents of its lumps, the MAPINFO lump of its wad,
+	 * the name of its marker and the specified version.
+	 * @param wad The wad containing the map.
+	 * @param map The lumps making up the map.
+	 * @param lumpNames The names of the lumps to include, lumps the map doesn't have are skipped.
+	 * @param version The version of whatever is stored under the key.
+	 * @return The key, as a hexadecimal String.
+	 */
+	public static String getKey(WadFile wad, WadMap map, Collection<String> lumpNames, String version) {
+		
+		MessageDigest digest;
+		try {
+			
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			
+			throw new RuntimeException("SHA-1 is not supported", e);
+		}
+		
+		update(digest, "VERSION", version.getBytes(StandardCharsets.UTF_8));
+		update(digest, "MARKER", map.name.toUpperCase().getBytes(StandardCharsets.ISO_8859_1));
+		
+		ByteBuffer mapInfo = wad.getLump("MAPINFO");
+		if(mapInfo != null)
+			update(digest, "WADINFO", mapInfo);
+		
+		//Sorted so the key doesn't depend on the iteration order of the collection
+		ArrayList<String> names = new ArrayList<>(lumpNames);
+		names.sort(null);
+		for(String name: names) {
+			
+			ByteBuffer lump = map.getLump(name);
+			if(lump != null)
+				update(digest, name, lump);
+		}
+		
+		StringBuilder key = new StringBuilder();
+		for(byte b: digest.digest())
+			key.append(String.format("%02x", b & 255));
+		
+		return key.toString();
+	}
+	
+	/**
+	 * Adds a named section to the hash, prefixed by its name and length so that sections can't run into each other.
+	 * @param digest The hash being computed.
+	 * @param name The name of the section.
+	 * @param data The contents of the section.
+	 */
+	private static void update(MessageDigest digest, String name, ByteBuffer data) {
+		
+		digest.update((name + '\0' + data.remaining() + '\0').getBytes(StandardCharsets.ISO_8859_1));
+		digest.update(data);
+	}
+	
+	
+	private static void update(MessageDigest digest, String name, byte[] data) {
+		
+		update(digest, name, ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Retrieves the result stored under the specified key, marking it as recently used.
+	 * @param key The key of the map.
+	 * @return The result, or null if there is no usable result for the key.
+	 */
+	public Result get(String key) {
+		
+		Path file = directory.resolve(key + SUFFIX);
+		try(DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			
+			Result result = new Result(in.readUTF(), in.readUTF(), in.readDouble());
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return result;
+		} catch (IOException e) {
+			
+			//Missing or unreadable entries are just misses, the map gets calculated again
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores a result under the specified key, replacing any previous result.
+	 * Errors writing to the cache are ignored, since the result can always be calculated again.
+	 * @param key The key of the map.
+	 * @param result The result to be stored.
+	 */
+	public void put(String key, Result result) {
+		
+		try {
+			
+			//Written to a temporary file first, so another thread or process never reads a partial entry
+			Path temp = Files.createTempFile(directory, key, ".tmp");
+			try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+				
+				out.writeUTF(result.mapCode);
+				out.writeUTF(result.mapName);
+				out.writeDouble(result.area);
+			}
+			
+			try {
+				
+				Files.move(temp, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {}
+	}
+	
+	/**
+	 * Deletes the least recently used results until the total size of the cache is within its limit.
+	 * @throws IOException If there was an error reading the cache directory.
+	 */
+	public void trim() throws IOException {
+		
+		ArrayList<Path> files = new ArrayList<>();
+		try(Stream<Path> list = Files.list(directory)) {
+			
+			list.filter((file) -> file.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+		}
+		
+		long size = 0;
+		ArrayList<FileEntry> entries = new ArrayList<>();
+		for(Path file: files) {
+			
+			try {
+				
+				FileEntry entry = new FileEntry(file, Files.getLastModifiedTime(file).toMillis(), Files.size(file));
+				entries.add(entry);
+				size += entry.size;
+			} catch (IOException e) {} //The file was removed while we were looking at it
+		}
+		
+		//Oldest first
+		entries.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+		for(int i = 0; i < entries.size() && size > maxSize; ++i) {
+			
+			FileEntry entry = entries.get(i);
+			Files.deleteIfExists(entry.file);
+			size -= entry.size;
+		}
+	}
+	
+	/**
+	 * The result of calculating a single map.
+	 */
+	public static class Result {
+		
+		public final String mapCode;
+		public final String mapName;
+		public final double area;
+		
+		
+		public Result(String mapCode, String mapName, double area) {
+			
+			this.mapCode = mapCode;
+			this.mapName = mapName;
+			this.area = area;
+		}
+	}
+	
+	
+	private static class FileEntry {
+		
+		private final Path file;
+		private final long lastUsed;
+		private final long size;
+		
+		
+		private FileEntry(Path file, long lastUsed, long size) {
+			
+			this.file = file;
+			this.lastUsed = lastUsed;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package me.michael4797.calculator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.Inflater;
+
+import me.michael4797.wad.PackEntry;
+import me.michael4797.wad.PackFile;
+import me.michael4797.wad.WadFile;
+
+/**
+ * Loads the wads in a pk3 on a pool of worker threads, so that compressed wads are inflated
+ * concurrently while previously loaded wads are being analyzed. Each worker reuses its own Inflater.
+ */
+public class WadLoader implements AutoCloseable{
+
+	private final PackFile pack;
+	private final Predicate<String> lumpFilter;
+	private final ArrayDeque<PackEntry> pending;
+	private final ExecutorService executor;
+	private final ExecutorCompletionService<WadFile> completed;
+	private final ConcurrentLinkedQueue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> {
+		
+		Inflater inflater = new Inflater(true);
+		inflaters.add(inflater);
+		return inflater;
+	});
+	private final int maxInFlight;
+	private final boolean ownsExecutor;
+	private int inFlight = 0;
+	
+	/**
+	 * Starts loading the specified entries from a pk3 on a pool of worker threads owned by this loader.
+	 * @param pack The pk3 containing the wads.
+	 * @param entries The entries of the wads to load.
+	 * @param lumpFilter The test used to decide which lumps should be kept from compressed wads.
+	 * @param threads The number of worker threads to inflate with.
+	 */
+	public WadLoader(PackFile pack, List<PackEntry> entries, Predicate<String> lumpFilter, int threads) {
+		
+		this(pack, entries, lumpFilter, Executors.newFixedThreadPool(threads, (r) -> {
+			
+			Thread thread = new Thread(r, "WadLoader");
+			thread.setDaemon(true);
+			return thread;
+		}), threads * 2, true);
+	}
+	
+	/**
+	 * Starts loading the specified entries from a pk3 on a shared executor, which is not shut down when this loader is closed.
+	 * @param pack The pk3 containing the wads.
+	 * @param entries The entries of the wads to load.
+	 * @param lumpFilter The test used to decide which lumps should be kept from compressed wads.
+	 * @param executor The executor to inflate with.
+	 * @param maxInFlight The maximum number of wads that may be loaded ahead of the consumer.
+	 */
+	public WadLoader(PackFile pack, List<PackEntry> entries, Predicate<String> lumpFilter, ExecutorService executor, int maxInFlight) {
+		
+		this(pack, entries, lumpFilter, executor, maxInFlight, false);
+	}
+	
+	
+	private WadLoader(PackFile pack, List<PackEntry> entries, Predicate<String> lumpFilter, ExecutorService executor, int maxInFlight, boolean ownsExecutor) {
+		
+		this.pack = pack;
+		this.lumpFilter = lumpFilter;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		pending = new ArrayDeque<>(entries);
+		completed = new ExecutorCompletionService<>(executor);
+		
+		//Only work a little ahead of whoever is consuming the wads, so we don't hold the whole pk3 in memory
+		this.maxInFlight = maxInFlight;
+		submit();
+	}
+	
+	/**
+	 * Retrieves the next wad to finish loading. Wads are returned in the order they finish, not the order of their entries.
+	 * If a wad can't be loaded, the rest can still be retrieved by calling this again.
+	 * @return The next loaded wad, or null if every wad has been returned.
+	 * @throws IOException If there was an error loading the wad.
+	 */
+	public WadFile next() throws IOException {
+		
+		if(inFlight == 0)
+			return null;
+		
+		try {
+			
+			Future<WadFile> future = completed.take();
+			--inFlight;
+			submit();
+			return future.get();
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading wads", e);
+		} catch (ExecutionException e) {
+			
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			
+			throw new RuntimeException("Error loading wad", e.getCause());
+		}
+	}
+	
+	/**
+	 * Submits pending entries to the workers until the limit of wads in flight is reached.
+	 */
+	private void submit() {
+		
+		while(inFlight < maxInFlight && !pending.isEmpty()) {
+			
+			PackEntry entry = pending.poll();
+			completed.submit(() -> load(entry));
+			++inFlight;
+		}
+	}
+	
+	/**
+	 * Loads a single wad, called from the worker threads.
+	 * @param entry The entry of the wad to load.
+	 * @return The loaded wad.
+	 * @throws IOException If there was an error reading the wad, naming the entry it came from.
+	 */
+	private WadFile load(PackEntry entry) throws IOException {
+		
+		try {
+		
+			//Uncompressed wads aren't copied at all, so there's nothing worth filtering
+			if(entry.isStored())
+				return new WadFile(pack.getData(entry));
+			
+			Inflater inflater = this.inflater.get();
+			return new WadFile(() -> pack.getInputStream(entry, inflater), lumpFilter);
+		} catch (IOException | RuntimeException e) {
+			
+			//Wads finish in any order, so the error has to say which one it was
+			throw new IOException("Error loading " + entry.name + ": " + e.getMessage(), e);
+		}
+	}
+	
+	
+	@Override
+	public void close() {
+		
+		pending.clear();
+		try {
+			
+			if(ownsExecutor) {
+				
+				executor.shutdownNow();
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			else {
+				
+				//Other work may be sharing the executor, so wait for our own wads rather than shutting it down
+				for(; inFlight > 0; --inFlight)
+					completed.take();
+			}
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+		}
+		
+		for(Inflater inflater: inflaters)
+			inflater.end();
+	}
+}
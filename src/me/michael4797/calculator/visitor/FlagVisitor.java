@@ -51,6 +51,6 @@ public class FlagVisitor implements TokenVisitor<Boolean>{
 	public Boolean visitIdentifier(Token token) {
 
 		//We made it to an individual flag, check if we found the one we care about.
-		return token.value.equalsIgnoreCase("DAMAGE_PLAYERS");
+		return token.getValue().equalsIgnoreCase("DAMAGE_PLAYERS");
 	}
 }
@@ -91,7 +91,7 @@ public class ScriptVisitor implements TokenVisitor<HashSet<Integer>>{
 	
 	public HashSet<Integer> visitFunctionCall(Token token) {
 		
-		String functionName = token.getChild(0).value;
+		String functionName = token.getChild(0).getValue();
 
 		if(functionName.equalsIgnoreCase("SectorDamage")) {
 		
@@ -87,6 +87,6 @@ public class SectorDamageVisitor implements TokenVisitor<Integer>{
 	public Integer visitInteger(Token token) {
 
 		//We made it to the end, so parse the tag and return it back up the chain.
-		return Integer.parseInt(token.value);
+		return Integer.parseInt(token.getValue());
 	}
 }
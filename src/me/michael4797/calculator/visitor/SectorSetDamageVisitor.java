@@ -81,6 +81,6 @@ public class SectorSetDamageVisitor implements TokenVisitor<Integer>{
 	public Integer visitInteger(Token token) {
 
 		//We made it to the tag, parse it and return it back.
-		return Integer.parseInt(token.value);
+		return Integer.parseInt(token.getValue());
 	}
 }
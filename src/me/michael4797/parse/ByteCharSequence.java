@@ -0,0 +1,71 @@
+package me.michael4797.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view of a ByteBuffer as a sequence of characters, where each byte is a single
+ * character in the ISO-8859-1 charset. The bytes are never copied, except when converted to a String.
+ */
+public class ByteCharSequence implements CharSequence {
+
+	private final ByteBuffer data;
+	private final int offset;
+	private final int length;
+	
+	/**
+	 * Creates a view of the bytes between the position and limit of the specified buffer.
+	 * The specified buffer is not modified.
+	 * @param data The buffer to view.
+	 */
+	public ByteCharSequence(ByteBuffer data) {
+		
+		this(data, data.position(), data.remaining());
+	}
+	
+	
+	private ByteCharSequence(ByteBuffer data, int offset, int length) {
+		
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	
+	@Override
+	public int length() {
+		
+		return length;
+	}
+	
+	
+	@Override
+	public char charAt(int index) {
+		
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + length);
+		
+		return (char) (data.get(offset + index) & 255);
+	}
+	
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		
+		if(start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + " is out of bounds for length " + length);
+		
+		return new ByteCharSequence(data, offset + start, end - start);
+	}
+	
+	
+	@Override
+	public String toString() {
+		
+		byte[] bytes = new byte[length];
+		ByteBuffer view = data.duplicate();
+		view.limit(offset + length).position(offset);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
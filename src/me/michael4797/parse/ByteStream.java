@@ -2,28 +2,65 @@ package me.michael4797.parse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
- * Convenience class for treating a byte array as an InputStream
+ * Convenience class for treating a byte array or a ByteBuffer as an InputStream
  */
 public class ByteStream extends InputStream{
 
-	private final byte[] data;
-	private int index = 0;
+	private final ByteBuffer data;
 	
 	
 	public ByteStream(byte[] data) {
 		
-		this.data = data;
+		this.data = ByteBuffer.wrap(data);
+	}
+	
+	
+	public ByteStream(ByteBuffer data) {
+		
+		this.data = data.duplicate();
 	}
 
 	
 	@Override
 	public int read() throws IOException {
 	
-		if(index < data.length)
-			return data[index++];
+		if(data.hasRemaining())
+			return data.get() & 255;
 		
 		return -1;
 	}
+	
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		
+		if(length == 0)
+			return 0;
+		
+		if(!data.hasRemaining())
+			return -1;
+		
+		int count = Math.min(length, data.remaining());
+		data.get(buffer, offset, count);
+		return count;
+	}
+	
+	
+	@Override
+	public int available() throws IOException {
+		
+		return data.remaining();
+	}
+	
+	/**
+	 * Retrieves the data that has not been read yet, without copying it or advancing this stream.
+	 * @return A view of the unread data.
+	 */
+	ByteBuffer unread() {
+		
+		return data.slice();
+	}
 }
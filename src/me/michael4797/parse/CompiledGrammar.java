@@ -0,0 +1,176 @@
+package me.michael4797.parse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rules of a Grammar in the form used by the Parser, where every parser rule and lexer token is identified by a small int.
+ * Rules are numbered first, in the order they're defined, followed by every other token the rules refer to. Patterns are arrays
+ * of these ids, so parsing compares ints rather than names, and names are only needed to build the AST and report errors.
+ * Once built, it never changes.
+ */
+class CompiledGrammar {
+
+	/**
+	 * The id of the empty string in a pattern.
+	 */
+	static final int LAMBDA = -1;
+	
+	/**
+	 * The name of each rule and token, by id.
+	 */
+	final String[] names;
+	
+	/**
+	 * The id given to any token that isn't part of the Grammar. It's one past every other id, so it matches nothing,
+	 * and tables indexed by token include it.
+	 */
+	final int unknown;
+	
+	/**
+	 * The number of rules, whose ids come before any token.
+	 */
+	final int ruleCount;
+	
+	/**
+	 * The ids of the tokens of each pattern of each rule, by rule id.
+	 */
+	final int[][][] patterns;
+	
+	/**
+	 * The operator table of each rule added as a level of precedence, or null for every other rule.
+	 */
+	final Precedence[] precedence;
+	final PredictionTable predictions;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	
+	/**
+	 * Compiles the specified rules, giving the lexer rules the ids of their tokens.
+	 * @param rules The ParserRules, by the name of the token they parse.
+	 * @param lexerRules The LexerRules, which are given ids as well.
+	 */
+	CompiledGrammar(LinkedHashMap<String, ParserRule> rules, List<LexerRule> lexerRules) {
+		
+		ArrayList<String> names = new ArrayList<>();
+		for(String rule: rules.keySet())
+			addName(rule, names);
+		
+		ruleCount = names.size();
+		for(LexerRule rule: lexerRules)
+			addName(rule.token, names);
+		
+		//Tokens that no lexer rule produces may still come from a custom TokenStream
+		for(ParserRule rule: rules.values()) {
+			
+			for(TokenPattern pattern: rule)
+				for(String token: pattern)
+					if(!token.isEmpty())
+						addName(token, names);
+			
+			if(rule instanceof PrecedenceRule)
+				for(String operator: ((PrecedenceRule) rule).operators.keySet())
+					addName(operator, names);
+		}
+		
+		this.names = names.toArray(new String[names.size()]);
+		unknown = this.names.length;
+		for(LexerRule rule: lexerRules)
+			rule.id = getId(rule.token);
+		
+		patterns = new int[ruleCount][][];
+		precedence = new Precedence[ruleCount];
+		int id = 0;
+		for(ParserRule rule: rules.values()) {
+			
+			patterns[id] = new int[rule.patterns.size()][];
+			for(int i = 0; i < patterns[id].length; ++i) {
+				
+				ArrayList<String> tokens = rule.patterns.get(i).pattern;
+				patterns[id][i] = new int[tokens.size()];
+				for(int j = 0; j < tokens.size(); ++j)
+					patterns[id][i][j] = tokens.get(j).isEmpty() ? LAMBDA : getId(tokens.get(j));
+			}
+			
+			if(rule instanceof PrecedenceRule)
+				precedence[id] = new Precedence((PrecedenceRule) rule, this);
+			
+			++id;
+		}
+		
+		predictions = new PredictionTable(rules, this);
+	}
+	
+	
+	private void addName(String name, ArrayList<String> names) {
+		
+		if(!ids.containsKey(name)) {
+			
+			ids.put(name, names.size());
+			names.add(name);
+		}
+	}
+	
+	/**
+	 * Gets the id of the specified rule or token.
+	 * @param name The name of the rule or token.
+	 * @return The id, or the unknown id if it isn't part of the Grammar.
+	 */
+	int getId(String name) {
+		
+		Integer id = ids.get(name);
+		return id == null ? unknown : id;
+	}
+	
+	/**
+	 * Checks if the specified id is a rule, rather than a token or the empty string.
+	 * @param id The id to check.
+	 * @return True if the id is a rule.
+	 */
+	boolean isRule(int id) {
+		
+		return id >= 0 && id < ruleCount;
+	}
+	
+	/**
+	 * Helper class containing a PrecedenceRule in terms of ids.
+	 */
+	static class Precedence {
+		
+		final int operand;
+		
+		/**
+		 * The id of the rule of each level, from the lowest precedence to the highest.
+		 */
+		final int[] levels;
+		
+		/**
+		 * The level of each token, by id, or -1 if it isn't an operator.
+		 */
+		final int[] operators;
+		
+		/**
+		 * The level of the rule, operators of any lower level end it.
+		 */
+		final int level;
+		
+		
+		private Precedence(PrecedenceRule rule, CompiledGrammar grammar) {
+			
+			operand = grammar.getId(rule.operand);
+			level = rule.level;
+			levels = new int[rule.levels.length];
+			for(int i = 0; i < levels.length; ++i)
+				levels[i] = grammar.getId(rule.levels[i]);
+			
+			operators = new int[grammar.unknown + 1];
+			Arrays.fill(operators, -1);
+			
+			for(Map.Entry<String, Integer> operator: rule.operators.entrySet())
+				operators[grammar.getId(operator.getKey())] = operator.getValue();
+		}
+	}
+}
@@ -1,11 +1,15 @@
 package me.michael4797.parse;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * A class used to construct the rules by which a resulting Lexer and Parser will behave.
+ * Once all of its rules have been added, a Grammar may be used to lex and parse from several threads at once,
+ * each Lexer and Parser it creates keeps its own state.
  */
 public class Grammar {
 
@@ -16,6 +20,11 @@ public class Grammar {
 	
 	private final LinkedList<LexerRule> lexerRules = new LinkedList<>();
 	private final LinkedHashMap<String, ParserRule> parserRules = new LinkedHashMap<>();
+	private final InternTable internTable = new InternTable();
+	private LexerAutomaton automaton;
+	private List<List<LexerRule>> candidates;
+	private boolean automatonCompiled;
+	private CompiledGrammar compiled;
 	
 	/**
 	 * Adds a rule to be used when lexing tokens from the input.
@@ -25,6 +34,8 @@ public class Grammar {
 	public void addLexerRule(String tokenName, String rule) {
 		
 		lexerRules.add(new LexerRule(tokenName, rule));
+		automatonCompiled = false;
+		compiled = null;
 	}
 	
 	/**
@@ -36,6 +47,33 @@ public class Grammar {
 	public void addLexerIgnoreRule(String tokenName, String rule) {
 
 		lexerRules.add(new LexerRule(tokenName, rule, true));
+		automatonCompiled = false;
+		compiled = null;
+	}
+	
+	/**
+	 * Adds a rule to be used when lexing tokens from the input, matched by a hand-written scanner.
+	 * @param tokenName The name of the resulting token.
+	 * @param scanner The scanner that matches the token.
+	 */
+	public void addLexerRule(String tokenName, LexerScanner scanner) {
+		
+		lexerRules.add(new LexerRule(tokenName, scanner, false));
+		automatonCompiled = false;
+		compiled = null;
+	}
+	
+	/**
+	 * Adds a rule to be used when lexing tokens from the input, matched by a hand-written scanner.
+	 * Whenever one of the specified tokens is lexed, it will be thrown out.
+	 * @param tokenName The name of the resulting token.
+	 * @param scanner The scanner that matches the token.
+	 */
+	public void addLexerIgnoreRule(String tokenName, LexerScanner scanner) {
+		
+		lexerRules.add(new LexerRule(tokenName, scanner, true));
+		automatonCompiled = false;
+		compiled = null;
 	}
 	
 	/**
@@ -49,12 +87,85 @@ public class Grammar {
 			
 			if(parserRules.put(tokenName, new ParserRule(rule)) != null)
 				throw new RuntimeException("Duplicate rule for token " + tokenName);
+			
+			compiled = null;
 		} catch (ParserException e) {
 			
 			throw new RuntimeException("Error adding parser rule", e);
 		}
 	}
+	
+	/**
+	 * Adds a table of binary operators to be used when parsing tokens from the lexer, parsed by precedence climbing.
+	 * Each level is added as a rule named by its first token, which parses that level and every level above it.
+	 * The resulting tokens are the same as a cascade of rules of the form "Operand Operator Level | Operand",
+	 * one for each level, but each operand is parsed only once instead of once for every level.
+	 * @param operand The token parsed between each operator.
+	 * @param levels The levels from the lowest precedence to the highest, each as the name of its token followed by its operators.
+	 */
+	public void addPrecedenceRule(String operand, String... levels) {
+		
+		try {
+			
+			for(PrecedenceRule rule: PrecedenceRule.create(operand, levels))
+				if(parserRules.put(rule.levels[rule.level], rule) != null)
+					throw new RuntimeException("Duplicate rule for token " + rule.levels[rule.level]);
+			
+			compiled = null;
+		} catch (ParserException e) {
+			
+			throw new RuntimeException("Error adding precedence rule", e);
+		}
+	}
 
+	/**
+	 * Compiles the lexer rules into a single automaton the first time a Lexer is needed.
+	 * If they can't be compiled, a table of the rules that can start with each byte is built instead.
+	 */
+	private synchronized void compileLexerRules() {
+		
+		if(!automatonCompiled) {
+			
+			automaton = LexerAutomaton.compile(lexerRules);
+			candidates = automaton == null ? getCandidates(lexerRules) : null;
+			automatonCompiled = true;
+		}
+	}
+		
+	/**
+	 * Finds the rules that could match input starting with each of the 256 possible bytes, in the order they were defined.
+	 * @param rules The lexer rules.
+	 * @return The rules that can start with each byte.
+	 */
+	private static List<List<LexerRule>> getCandidates(List<LexerRule> rules) {
+		
+		ArrayList<List<LexerRule>> candidates = new ArrayList<>(256);
+		for(char c = 0; c < 256; ++c) {
+			
+			ArrayList<LexerRule> list = new ArrayList<>();
+			for(LexerRule rule: rules)
+				if(rule.canStartWith(c))
+					list.add(rule);
+			
+			list.trimToSize();
+			candidates.add(list);
+		}
+		
+		return candidates;
+	}
+	
+	/**
+	 * Constructs a Lexer using the compiled lexer rules.
+	 * @param source The InputStream to lex.
+	 * @return The newly constructed Lexer.
+	 */
+	private synchronized Lexer createLexer(InputStream source) {
+		
+		compileLexerRules();
+		compile(); //Gives the lexer rules the ids of their tokens
+		return new Lexer(source, lexerRules, automaton, candidates, internTable);
+	}
+	
 	/**
 	 * Compiles a lexer with the predetermined rules used to lex the specified InputStream.
 	 * @param source The InputStream to lex.
@@ -62,9 +173,23 @@ public class Grammar {
 	 */
 	public Lexer compileLexer(InputStream source) {
 		
-		return new Lexer(source, lexerRules);
+		return createLexer(source);
 	}
 
+	/**
+	 * Constructs a token for a TokenStream that reads its input without a Lexer, which shares its text with
+	 * the tokens lexed by this Grammar.
+	 * @param tokenName The name of the token.
+	 * @param source The input the token was read from.
+	 * @param offset The index of the first character of the token in the input.
+	 * @param length The number of characters in the token.
+	 * @return The newly constructed token.
+	 */
+	public LexerToken createToken(String tokenName, CharSequence source, int offset, int length) {
+		
+		return new LexerToken(tokenName, -1, source, offset, length, null, internTable);
+	}
+	
 	/**
 	 * Compiles a parser with the predetermined rules used to parse the specified TokenStream.
 	 * @param source The TokenStream to parse.
@@ -72,7 +197,7 @@ public class Grammar {
 	 */
 	public Parser compileParser(TokenStream source) {
 		
-		return new Parser(source, parserRules);
+		return new Parser(source, parserRules, compile());
 	}
 
 	/**
@@ -82,6 +207,18 @@ public class Grammar {
 	 */
 	public Parser compileParser(InputStream source) {
 		
-		return new Parser(new Lexer(source, lexerRules), parserRules);
+		return new Parser(createLexer(source), parserRules, compile());
+	}
+	
+	/**
+	 * Compiles the rules into the form used by the Parser, the first time a Lexer or Parser is needed.
+	 * @return The compiled rules.
+	 */
+	private synchronized CompiledGrammar compile() {
+		
+		if(compiled == null)
+			compiled = new CompiledGrammar(parserRules, lexerRules);
+		
+		return compiled;
 	}
 }
@@ -0,0 +1,160 @@
+package me.michael4797.parse;
+
+/**
+ * A table of the text of short tokens that have already been lexed, shared by every Lexer created from the same Grammar.
+ * Tokens such as property names and texture names repeat thousands of times in a single map, so rather than each
+ * copying its own String out of the input, they all share one instance along with its lowercase form.
+ * Numbers rarely repeat between maps, so they're left out to save the table for names.
+ * The table is looked up by a range of the input without creating a String, and may be read by several threads at once.
+ */
+class InternTable {
+
+	/**
+	 * Tokens longer than this are rarely repeated, so they're never added to the table.
+	 */
+	private static final int MAX_LENGTH = 32;
+	
+	/**
+	 * Once the table holds this many entries, new tokens are no longer added to it.
+	 */
+	private static final int MAX_ENTRIES = 8192;
+	
+	private volatile Entry[] entries = new Entry[256];
+	private volatile boolean full;
+	private int size;
+	
+	/**
+	 * Retrieves the entry for the specified range of the input, adding one if it doesn't exist yet.
+	 * @param input The input containing the token.
+	 * @param offset The index of the first character of the token.
+	 * @param length The number of characters in the token.
+	 * @return The entry, or null if the token is too long, is a number, or the table is full.
+	 */
+	Entry get(CharSequence input, int offset, int length) {
+		
+		if(length == 0 || length > MAX_LENGTH || isNumber(input.charAt(offset)))
+			return null;
+		
+		int hash = hash(input, offset, length);
+		Entry entry = find(entries, input, offset, length, hash);
+		if(entry != null)
+			return entry;
+		
+		//Once the table is full it never changes, so there's no need to lock it to find that out
+		if(full)
+			return null;
+		
+		return add(input, offset, length, hash);
+	}
+	
+	/**
+	 * Adds an entry for the specified range of the input, unless another thread added it first.
+	 * @param input The input containing the token.
+	 * @param offset The index of the first character of the token.
+	 * @param length The number of characters in the token.
+	 * @param hash The hash of the token.
+	 * @return The entry, or null if the table is full.
+	 */
+	private synchronized Entry add(CharSequence input, int offset, int length, int hash) {
+		
+		Entry[] table = entries;
+		Entry entry = find(table, input, offset, length, hash);
+		if(entry != null)
+			return entry;
+		
+		if(size == MAX_ENTRIES)
+			return null;
+		
+		//Keep the table at most half full so probes stay short
+		if(++size * 2 > table.length) {
+			
+			Entry[] grown = new Entry[table.length * 2];
+			for(Entry old: table)
+				if(old != null)
+					insert(grown, old);
+			
+			table = grown;
+		}
+		
+		entry = new Entry(input.subSequence(offset, offset + length).toString(), hash);
+		insert(table, entry);
+		entries = table;
+		if(size == MAX_ENTRIES)
+			full = true;
+		
+		return entry;
+	}
+	
+	
+	private static boolean isNumber(char first) {
+		
+		return (first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.';
+	}
+	
+	
+	private static Entry find(Entry[] table, CharSequence input, int offset, int length, int hash) {
+		
+		int mask = table.length - 1;
+		for(int i = hash & mask; table[i] != null; i = (i + 1) & mask) {
+			
+			Entry entry = table[i];
+			if(entry.hash == hash && entry.matches(input, offset, length))
+				return entry;
+		}
+		
+		return null;
+	}
+	
+	
+	private static void insert(Entry[] table, Entry entry) {
+		
+		int mask = table.length - 1;
+		int i = entry.hash & mask;
+		while(table[i] != null)
+			i = (i + 1) & mask;
+		
+		table[i] = entry;
+	}
+	
+	
+	private static int hash(CharSequence input, int offset, int length) {
+		
+		int hash = 0;
+		for(int i = offset; i < offset + length; ++i)
+			hash = hash * 31 + input.charAt(i);
+		
+		//Spread the bits, the low bits of short Strings are too similar
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * The canonical text of a token.
+	 */
+	static class Entry {
+		
+		final String value;
+		final String lowerCase;
+		private final int hash;
+		
+		
+		private Entry(String value, int hash) {
+			
+			this.value = value;
+			this.lowerCase = value.toLowerCase();
+			this.hash = hash;
+		}
+		
+		
+		private boolean matches(CharSequence input, int offset, int length) {
+			
+			if(value.length() != length)
+				return false;
+			
+			for(int i = 0; i < length; ++i)
+				if(value.charAt(i) != input.charAt(offset + i))
+					return false;
+			
+			return true;
+		}
+	}
+}
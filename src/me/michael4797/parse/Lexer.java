@@ -2,21 +2,33 @@ package me.michael4797.parse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * The base class used to construct LexerTokens from an InputStream based
  * on a list of rules.
+ * The entire input is lexed in place, in-memory sources such as a ByteStream are viewed without
+ * being copied, and any other InputStream is read fully the first time a token is needed.
  */
 public class Lexer implements TokenStream{
 
 	public final LinkedList<LexerRule> rules;
-	private final InputStream in;
-	private final byte[] data;
+	private final LexerAutomaton automaton;
+	private final List<List<LexerRule>> candidates;
+	private final InternTable table;
 	
-	private int index;
+	/**
+	 * The state of matching each rule by its regex, which is kept per Lexer since the rules are shared.
+	 */
+	private final HashMap<LexerRule, LexerRule.Match> matchers = new HashMap<>();
+	private InputStream in;
+	private CharSequence input;
 	
-	private final StringBuffer current = new StringBuffer();
+	private int index;
 	
 	/**
 	 * Creates a Lexer that is capable of constructing the defined LexerRules into LexerTokens
@@ -26,9 +38,41 @@ public class Lexer implements TokenStream{
 	 */
 	public Lexer(InputStream source, LinkedList<LexerRule> rules) {
 		
+		this(source, rules, null, null, null);
+	}
+	
+	/**
+	 * Creates a Lexer that matches the defined LexerRules using an automaton compiled from them.
+	 * @param source The InputStream to be lexed.
+	 * @param rules The rules defining the Tokens to be lexed.
+	 * @param automaton The automaton compiled from the rules, or null if each rule should be matched by its regex.
+	 * @param candidates The rules that can start with each byte, or null if every rule should be tried.
+	 * @param table The table of text shared by the tokens of every Lexer of the same Grammar, or null if text shouldn't be shared.
+	 */
+	Lexer(InputStream source, LinkedList<LexerRule> rules, LexerAutomaton automaton, List<List<LexerRule>> candidates, InternTable table) {
+		
 		this.rules = rules;
-		in = source;
-		data = new byte[8192];
+		this.automaton = automaton;
+		this.candidates = candidates;
+		this.table = table;
+		
+		//Sources that are already in memory don't need to be read
+		if(source instanceof ByteStream)
+			input = new ByteCharSequence(((ByteStream) source).unread());
+		else if(source instanceof StringStream)
+			input = ((StringStream) source).unread();
+		else
+			in = source;
+	}
+	
+	/**
+	 * Creates a Lexer with the same rules as this one, used to lex the specified InputStream.
+	 * @param source The InputStream to be lexed.
+	 * @return The newly constructed Lexer.
+	 */
+	public Lexer withSource(InputStream source) {
+		
+		return new Lexer(source, rules, automaton, candidates, table);
 	}
 
 
@@ -43,91 +87,130 @@ public class Lexer implements TokenStream{
 		
 		final LexerMatch match = new LexerMatch();
 
-		if(current.length() - index <= 0)
-			readBlock(); //If we've matched everything in our buffer, read more data from the source
+		if(input == null)
+			readInput();
 
 		do{
 			
+			if(index >= input.length())
+				throw new ParserEndOfStreamException("Unable to read from source, end of stream.");
+			
 			match.length = 0;
 			match.rule = null;
 			
-			findBestMatch(match); //Match the next token
+			if(automaton != null)
+				runAutomaton(match); //Match the next token
+			else
+				findBestMatch(match);
 			
-			if(match.rule == null)
-				throw new ParserException("Unable to match lexer token for input " + current.substring(index));
+			if(match.rule == null) {
+				
+				//Don't put the rest of a huge lump in the message
+				int end = Math.min(input.length(), index + 64);
+				throw new ParserException("Unable to match lexer token for input " + input.subSequence(index, end));
+			}
 			
 			index += match.length;
 		}while(match.rule.ignore); //If the rule should be discarded, skip it and parse the next token.
 		
-		return new LexerToken(match.rule.token, current.substring(index - match.length, index)); //Construct the token from the matched LexerRule
+		return new LexerToken(match.rule.token, match.rule.id, input, index - match.length, match.length, match.rule.text, table); //Construct the token from the matched LexerRule
 	}
 	
-	
-	private void findBestMatch(LexerMatch match) throws ParserException {
-	
-		boolean firstRun = true;
-		boolean noPossible = true;
+	/**
+	 * Matches the next token by running the automaton compiled from our rules until no rule can match,
+	 * remembering the last rule that did, and then running the scanners of any rules that aren't part of the automaton.
+	 * This finds the same token as trying every rule, in a single pass.
+	 * @param match The best match found.
+	 * @throws ParserException If the end of the input is reached before anything could be matched.
+	 */
+	private void runAutomaton(LexerMatch match) throws ParserException {
 		
-		while(true) {
+		int state = automaton.start();
+		int length = input.length();
+		int i = index;
+		for(; i < length; ++i) {
 			
-			for(LexerRule rule: rules) {
-				
-				if(!firstRun && !rule.valid()) //If we've already tried to match this rule once, and it's not valid, skip it
-					continue;
-				
-				rule.setInput(current, index); //Do some pattern matching on the rule with the current input
-				
-				if(rule.matches() && rule.matchLength() > match.length) { //If the rule matches, and it's longer than our best, update the best
-	
-					match.rule = rule;
-					match.length = rule.matchLength();
-				}
+			state = automaton.next(state, input.charAt(i));
+			if(state == -1)
+				break;
+			
+			LexerRule rule = automaton.accept(state);
+			if(rule != null) {
 				
-				if(rule.valid()) //If at least one rule is valid, keep going
-					noPossible = false;
+				match.rule = rule;
+				match.length = i + 1 - index;
 			}
+		}
+		
+		//We ran out of input part way through a token
+		boolean possible = i == length;
+		for(LexerRule rule: automaton.scanners) {
 			
-			if(noPossible) //No rules match anymore, we've gone too far, everyone run
-				break;
+			//Scanners don't keep any state, so they can be run directly
+			int matchLength = rule.scanner.scan(input, index);
+			if(matchLength > match.length || (matchLength == match.length && matchLength > 0 && automaton.precedes(rule, match.rule))) {
+				
+				match.rule = rule;
+				match.length = matchLength;
+			}
 			
-			noPossible = true;
-			firstRun = false;
+			if(matchLength == -1)
+				possible = true;
+		}
+		
+		if(match.rule == null && possible)
+			throw new ParserEndOfStreamException("Unable to read from source, end of stream.");
+	}
+	
+	
+	private void findBestMatch(LexerMatch match) throws ParserException {
+	
+		//Only try the rules that could start with the next character
+		List<LexerRule> rules = this.rules;
+		char first = input.charAt(index);
+		if(candidates != null && first < candidates.size())
+			rules = candidates.get(first);
+		
+		boolean possible = false;
+		for(LexerRule rule: rules) {
+		
+			LexerRule.Match matcher = matchers.computeIfAbsent(rule, LexerRule::matcher);
+			matcher.setInput(input, index); //Do some pattern matching on the rule with the current input
 			
-			try {
+			if(matcher.matches() && matcher.matchLength() > match.length) { //If the rule matches, and it's longer than our best, update the best
 				
-				readBlock(); //Some rules are still valid, so get more input until we wear them down
-			}catch(ParserEndOfStreamException e) {
-				
-				//If we have no match and no input, we have a problem, so yell really loudly.
-				if(match.rule == null)
-					throw e;
-
-				//If we have no more input, and we have a possible match, just return the match.
-				break;
+				match.rule = rule;
+				match.length = matcher.matchLength();
 			}
+			
+			if(matcher.valid()) //The rule could have matched if there was more input
+				possible = true;
 		}
+			
+		//If we have no match and no input, we have a problem, so yell really loudly.
+		if(match.rule == null && possible)
+			throw new ParserEndOfStreamException("Unable to read from source, end of stream.");
 	}
 	
 	/**
-	 * Reads a chunk of input from the source InputStream and adds it to our buffer.
-	 * @throws ParserException If there is an error reading from the InputStream, or the end of the input has been reached.
+	 * Reads the entire source InputStream, the first time a token is needed.
+	 * @throws ParserException If there is an error reading from the InputStream.
 	 */
-	private void readBlock() throws ParserException {
-		
-		if(index >= current.length())
-			current.setLength(0);
-		else
-			current.delete(0, index);
+	private void readInput() throws ParserException {
 		
-		index = 0;
 		try {
 			
-			int len = in.read(data, 0, data.length);
-			if(len == -1)
-				throw new ParserEndOfStreamException("Unable to read from source, end of stream.");
+			byte[] data = new byte[8192];
+			int length = 0;
+			for(int read = 0; read != -1; read = in.read(data, length, data.length - length)) {
+			
+				length += read;
+				if(length == data.length)
+					data = Arrays.copyOf(data, data.length * 2);
+			}
 			
-			for(int i = 0; i < len; ++i) 
-				current.append((char)(data[i]&255));
+			input = new ByteCharSequence(ByteBuffer.wrap(data, 0, length));
+			in = null;
 		} catch (IOException e) {
 			
 			throw new ParserException("Error reading from source", e);
@@ -0,0 +1,698 @@
+package me.michael4797.parse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A deterministic automaton that matches every LexerRule of a Grammar at once.
+ * Each state has a transition for each of the 256 characters the Lexer can read, and accepts the earliest
+ * defined rule that matches all of the input read so far. Running the automaton until it has no transition
+ * and remembering the last accepting state gives the longest match, with ties going to the earliest rule.
+ * Only a subset of the regex syntax is supported, grammars with rules outside of that subset can't be compiled.
+ * Rules matched by a LexerScanner aren't part of the automaton, the Lexer runs their scanners alongside it.
+ */
+class LexerAutomaton {
+
+	/**
+	 * The number of characters in the alphabet, the Lexer reads each byte as a single character.
+	 */
+	private static final int ALPHABET = 256;
+	
+	/**
+	 * The most states the automaton may have before we give up and let the Lexer use the regex path.
+	 */
+	private static final int MAX_STATES = 16384;
+	
+	/**
+	 * The transition table, the next state from state s on character c is at s * ALPHABET + c, or -1 if there is none.
+	 */
+	private final int[] transitions;
+	private final LexerRule[] accepts;
+	
+	/**
+	 * The rules matched by a scanner, in the order they were defined.
+	 */
+	final List<LexerRule> scanners;
+	
+	/**
+	 * The order each rule was defined in, used to break ties between the automaton and the scanners.
+	 */
+	private final HashMap<LexerRule, Integer> order;
+	
+	
+	private LexerAutomaton(int[] transitions, LexerRule[] accepts, List<LexerRule> rules) {
+		
+		this.transitions = transitions;
+		this.accepts = accepts;
+		
+		ArrayList<LexerRule> scanners = new ArrayList<>();
+		order = new HashMap<>();
+		for(LexerRule rule: rules) {
+			
+			order.put(rule, order.size());
+			if(rule.scanner != null)
+				scanners.add(rule);
+		}
+		
+		this.scanners = scanners;
+	}
+	
+	/**
+	 * Retrieves the state the automaton starts in.
+	 * @return The start state.
+	 */
+	public int start() {
+		
+		return 0;
+	}
+	
+	/**
+	 * Moves from the specified state on the specified character.
+	 * @param state The current state.
+	 * @param c The next character of the input.
+	 * @return The next state, or -1 if no rule can match the input.
+	 */
+	public int next(int state, char c) {
+		
+		if(c >= ALPHABET)
+			return -1;
+		
+		return transitions[state * ALPHABET + c];
+	}
+	
+	/**
+	 * Retrieves the rule accepted by the specified state.
+	 * @param state The state.
+	 * @return The earliest defined rule that matches the input leading to the state, or null if there is none.
+	 */
+	public LexerRule accept(int state) {
+		
+		return accepts[state];
+	}
+	
+	/**
+	 * Checks if a rule was defined before another, the earlier rule wins when both match the same input.
+	 * @param rule The rule.
+	 * @param other The other rule.
+	 * @return True if the rule was defined first.
+	 */
+	public boolean precedes(LexerRule rule, LexerRule other) {
+		
+		return order.get(rule) < order.get(other);
+	}
+	
+	/**
+	 * Compiles the specified rules into a single automaton.
+	 * @param rules The rules, in the order they were defined.
+	 * @return The compiled automaton, or null if one of the rules uses unsupported regex syntax
+	 * or the automaton would be too large.
+	 */
+	public static LexerAutomaton compile(List<LexerRule> rules) {
+		
+		Nfa nfa = new Nfa();
+		int[] starts = new int[rules.size()];
+		for(int i = 0; i < starts.length; ++i) {
+			
+			starts[i] = -1;
+			if(rules.get(i).scanner != null)
+				continue;
+			
+			Node node = new RegexParser(rules.get(i).pattern).parse();
+			if(node == null)
+				return null;
+			
+			starts[i] = node.build(nfa, nfa.addAccept(i));
+		}
+		
+		//Subset construction, each state of the automaton is the set of NFA states it could be in
+		ArrayList<BitSet> sets = new ArrayList<>();
+		HashMap<BitSet, Integer> ids = new HashMap<>();
+		BitSet first = new BitSet();
+		for(int start: starts)
+			if(start != -1)
+				nfa.close(start, first);
+		
+		sets.add(first);
+		ids.put(first, 0);
+		
+		int[] table = new int[ALPHABET * 16];
+		ArrayList<LexerRule> accepts = new ArrayList<>();
+		BitSet[] moves = new BitSet[ALPHABET];
+		for(int state = 0; state < sets.size(); ++state) {
+			
+			BitSet set = sets.get(state);
+			int accept = Integer.MAX_VALUE;
+			for(int i = 0; i < ALPHABET; ++i)
+				moves[i] = null;
+			
+			for(int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1)) {
+				
+				if(nfa.accept.get(n) >= 0)
+					accept = Math.min(accept, nfa.accept.get(n));
+				
+				BitSet chars = nfa.chars.get(n);
+				if(chars == null)
+					continue;
+				
+				for(int c = chars.nextSetBit(0); c >= 0 && c < ALPHABET; c = chars.nextSetBit(c + 1)) {
+					
+					if(moves[c] == null)
+						moves[c] = new BitSet();
+					
+					nfa.close(nfa.target.get(n), moves[c]);
+				}
+			}
+			
+			accepts.add(accept == Integer.MAX_VALUE ? null : rules.get(accept));
+			
+			if(table.length < (state + 1) * ALPHABET)
+				table = Arrays.copyOf(table, table.length * 2);
+			
+			for(int c = 0; c < ALPHABET; ++c) {
+				
+				if(moves[c] == null) {
+					
+					table[state * ALPHABET + c] = -1;
+					continue;
+				}
+				
+				Integer id = ids.get(moves[c]);
+				if(id == null) {
+					
+					if(sets.size() >= MAX_STATES)
+						return null;
+					
+					id = sets.size();
+					sets.add(moves[c]);
+					ids.put(moves[c], id);
+				}
+				
+				table[state * ALPHABET + c] = id;
+			}
+		}
+		
+		return new LexerAutomaton(Arrays.copyOf(table, sets.size() * ALPHABET), accepts.toArray(new LexerRule[0]), rules);
+	}
+	
+	/**
+	 * A nondeterministic automaton built from the rules, where each state either moves on a set of characters
+	 * to a single target, or moves without consuming input to any number of targets.
+	 */
+	private static class Nfa {
+		
+		private final ArrayList<BitSet> chars = new ArrayList<>();
+		private final ArrayList<Integer> target = new ArrayList<>();
+		private final ArrayList<int[]> epsilon = new ArrayList<>();
+		private final ArrayList<Integer> accept = new ArrayList<>();
+		
+		
+		private int add(BitSet chars, int target, int[] epsilon, int accept) {
+			
+			this.chars.add(chars);
+			this.target.add(target);
+			this.epsilon.add(epsilon);
+			this.accept.add(accept);
+			return this.chars.size() - 1;
+		}
+		
+		
+		private int addChars(BitSet chars, int target) {
+			
+			return add(chars, target, null, -1);
+		}
+		
+		
+		private int addSplit(int... targets) {
+			
+			return add(null, -1, targets, -1);
+		}
+		
+		
+		private int addAccept(int rule) {
+			
+			return add(null, -1, null, rule);
+		}
+		
+		/**
+		 * Adds the specified state, and every state reachable from it without consuming input, to the set.
+		 * @param state The state.
+		 * @param set The set to add the states to.
+		 */
+		private void close(int state, BitSet set) {
+			
+			if(state < 0 || set.get(state))
+				return;
+			
+			set.set(state);
+			int[] targets = epsilon.get(state);
+			if(targets != null)
+				for(int next: targets)
+					close(next, set);
+		}
+	}
+	
+	/**
+	 * A node in the syntax tree of a regex.
+	 */
+	private interface Node {
+		
+		/**
+		 * Builds the states matching this node.
+		 * @param nfa The automaton to add the states to.
+		 * @param next The state to move to after this node has been matched.
+		 * @return The state that begins matching this node.
+		 */
+		int build(Nfa nfa, int next);
+	}
+	
+	
+	private static class CharNode implements Node {
+		
+		private final BitSet chars;
+		
+		
+		private CharNode(BitSet chars) {
+			
+			this.chars = chars;
+		}
+		
+		
+		@Override
+		public int build(Nfa nfa, int next) {
+			
+			return nfa.addChars(chars, next);
+		}
+	}
+	
+	
+	private static class ConcatNode implements Node {
+		
+		private final ArrayList<Node> nodes;
+		
+		
+		private ConcatNode(ArrayList<Node> nodes) {
+			
+			this.nodes = nodes;
+		}
+		
+		
+		@Override
+		public int build(Nfa nfa, int next) {
+			
+			//Built back to front, since each node needs to know where it goes next
+			for(int i = nodes.size() - 1; i >= 0; --i)
+				next = nodes.get(i).build(nfa, next);
+			
+			return next;
+		}
+	}
+	
+	
+	private static class AlternationNode implements Node {
+		
+		private final ArrayList<Node> nodes;
+		
+		
+		private AlternationNode(ArrayList<Node> nodes) {
+			
+			this.nodes = nodes;
+		}
+		
+		
+		@Override
+		public int build(Nfa nfa, int next) {
+			
+			int[] starts = new int[nodes.size()];
+			for(int i = 0; i < starts.length; ++i)
+				starts[i] = nodes.get(i).build(nfa, next);
+			
+			return nfa.addSplit(starts);
+		}
+	}
+	
+	
+	private static class RepeatNode implements Node {
+		
+		private final Node node;
+		private final int min;
+		private final int max;
+		
+		/**
+		 * @param node The repeated node.
+		 * @param min The minimum number of repetitions.
+		 * @param max The maximum number of repetitions, or -1 if there is no maximum.
+		 */
+		private RepeatNode(Node node, int min, int max) {
+			
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+		
+		
+		@Override
+		public int build(Nfa nfa, int next) {
+			
+			if(max == -1) {
+				
+				//The loop is a split that either matches the node again or moves on
+				int loop = nfa.addSplit(-1, next);
+				nfa.epsilon.get(loop)[0] = node.build(nfa, loop);
+				next = loop;
+			}
+			else {
+				
+				for(int i = min; i < max; ++i)
+					next = nfa.addSplit(node.build(nfa, next), next);
+			}
+			
+			for(int i = 0; i < min; ++i)
+				next = node.build(nfa, next);
+			
+			return next;
+		}
+	}
+	
+	/**
+	 * Parses the subset of Java's regex syntax that can be compiled into an automaton: literals, escapes,
+	 * character classes, '.', groups, alternation and the greedy quantifiers.
+	 */
+	private static class RegexParser {
+		
+		private final String regex;
+		private int index;
+		
+		
+		private RegexParser(String regex) {
+			
+			this.regex = regex;
+		}
+		
+		/**
+		 * Parses the regex.
+		 * @return The root of the syntax tree, or null if the regex uses unsupported syntax.
+		 */
+		private Node parse() {
+			
+			try {
+				
+				Node node = parseAlternation();
+				return index == regex.length() ? node : null;
+			} catch (UnsupportedOperationException | IndexOutOfBoundsException e) {
+				
+				return null;
+			}
+		}
+		
+		
+		private boolean more() {
+			
+			return index < regex.length();
+		}
+		
+		
+		private char peek() {
+			
+			return regex.charAt(index);
+		}
+		
+		
+		private Node parseAlternation() {
+			
+			ArrayList<Node> nodes = new ArrayList<>();
+			nodes.add(parseConcat());
+			while(more() && peek() == '|') {
+				
+				++index;
+				nodes.add(parseConcat());
+			}
+			
+			return nodes.size() == 1 ? nodes.get(0) : new AlternationNode(nodes);
+		}
+		
+		
+		private Node parseConcat() {
+			
+			ArrayList<Node> nodes = new ArrayList<>();
+			while(more() && peek() != '|' && peek() != ')')
+				nodes.add(parseRepeat());
+			
+			return new ConcatNode(nodes);
+		}
+		
+		
+		private Node parseRepeat() {
+			
+			Node node = parseAtom();
+			while(more()) {
+				
+				char c = peek();
+				if(c == '*')
+					node = new RepeatNode(node, 0, -1);
+				else if(c == '+')
+					node = new RepeatNode(node, 1, -1);
+				else if(c == '?')
+					node = new RepeatNode(node, 0, 1);
+				else if(c == '{')
+					node = parseCount(node);
+				else
+					break;
+				
+				if(c != '{')
+					++index;
+				
+				//Lazy and possessive quantifiers don't mean anything when every match is the longest one
+				if(more() && (peek() == '?' || peek() == '+'))
+					throw new UnsupportedOperationException();
+			}
+			
+			return node;
+		}
+		
+		
+		private Node parseCount(Node node) {
+			
+			int end = regex.indexOf('}', index);
+			if(end == -1)
+				throw new UnsupportedOperationException();
+			
+			String[] bounds = regex.substring(index + 1, end).split(",", -1);
+			index = end + 1;
+			try {
+				
+				int min = Integer.parseInt(bounds[0]);
+				int max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+				if(bounds.length > 2 || min < 0 || (max != -1 && max < min) || Math.max(min, max) > 256)
+					throw new UnsupportedOperationException();
+				
+				return new RepeatNode(node, min, max);
+			} catch (NumberFormatException e) {
+				
+				throw new UnsupportedOperationException();
+			}
+		}
+		
+		
+		private Node parseAtom() {
+			
+			char c = regex.charAt(index++);
+			switch(c) {
+			case '(':
+				if(more() && peek() == '?') {
+					
+					//Non-capturing groups are fine, flags and lookaround are not
+					if(!regex.startsWith("?:", index))
+						throw new UnsupportedOperationException();
+					
+					index += 2;
+				}
+				
+				Node node = parseAlternation();
+				if(!more() || peek() != ')')
+					throw new UnsupportedOperationException();
+				
+				++index;
+				return node;
+			case '[':
+				return new CharNode(parseClass());
+			case '.':
+				//Without DOTALL, '.' doesn't match line terminators
+				BitSet any = new BitSet(ALPHABET);
+				any.set(0, ALPHABET);
+				any.clear('\n');
+				any.clear('\r');
+				any.clear('\u0085');
+				return new CharNode(any);
+			case '\\':
+				return new CharNode(parseEscape());
+			case '^':
+			case '$':
+			case '{':
+			case '*':
+			case '+':
+			case '?':
+			case ')':
+				throw new UnsupportedOperationException();
+			default:
+				return new CharNode(single(c));
+			}
+		}
+		
+		
+		private BitSet parseClass() {
+			
+			boolean negate = more() && peek() == '^';
+			if(negate)
+				++index;
+			
+			//A ']' at the start of a class is an edge case we don't need
+			if(peek() == ']')
+				throw new UnsupportedOperationException();
+			
+			BitSet set = new BitSet(ALPHABET);
+			while(peek() != ']') {
+				
+				char c = regex.charAt(index++);
+				if(c == '[' || (c == '&' && more() && peek() == '&'))
+					throw new UnsupportedOperationException();
+				
+				BitSet item;
+				if(c == '\\') {
+					
+					item = parseEscape();
+					if(item.cardinality() != 1 || peek() != '-') {
+						
+						set.or(item);
+						continue;
+					}
+					
+					c = (char) item.nextSetBit(0);
+				}
+				
+				//A range, unless the '-' is the last thing in the class
+				if(peek() == '-' && regex.charAt(index + 1) != ']') {
+					
+					++index;
+					char end = regex.charAt(index++);
+					if(end == '\\') {
+						
+						BitSet escaped = parseEscape();
+						if(escaped.cardinality() != 1)
+							throw new UnsupportedOperationException();
+						
+						end = (char) escaped.nextSetBit(0);
+					}
+					else if(end == '[') {
+						
+						throw new UnsupportedOperationException();
+					}
+					
+					if(end < c)
+						throw new UnsupportedOperationException();
+					
+					set.set(c, Math.min(end, ALPHABET - 1) + 1);
+				}
+				else {
+					
+					set.or(single(c));
+				}
+			}
+			
+			++index;
+			if(negate)
+				set.flip(0, ALPHABET);
+			
+			return set;
+		}
+		
+		
+		private BitSet parseEscape() {
+			
+			char c = regex.charAt(index++);
+			switch(c) {
+			case 't':
+				return single('\t');
+			case 'n':
+				return single('\n');
+			case 'r':
+				return single('\r');
+			case 'f':
+				return single('\f');
+			case 'a':
+				return single('\u0007');
+			case 'e':
+				return single('\u001B');
+			case 'x':
+				return single(parseHex(2));
+			case 'u':
+				return single(parseHex(4));
+			case 'd':
+			case 'D':
+				return range(c == 'D', '0', '9');
+			case 'w':
+			case 'W':
+				BitSet word = range(false, 'a', 'z');
+				word.or(range(false, 'A', 'Z'));
+				word.or(range(false, '0', '9'));
+				word.set('_');
+				if(c == 'W')
+					word.flip(0, ALPHABET);
+				
+				return word;
+			case 's':
+			case 'S':
+				BitSet space = new BitSet(ALPHABET);
+				space.set(' ');
+				space.set('\t', '\r' + 1); //\t, \n, \u000B, \f and \r
+				if(c == 'S')
+					space.flip(0, ALPHABET);
+				
+				return space;
+			default:
+				//Escaped letters and digits have special meanings we don't support, anything else is a literal
+				if(Character.isLetterOrDigit(c))
+					throw new UnsupportedOperationException();
+				
+				return single(c);
+			}
+		}
+		
+		
+		private char parseHex(int digits) {
+			
+			String hex = regex.substring(index, index + digits);
+			index += digits;
+			try {
+				
+				return (char) Integer.parseInt(hex, 16);
+			} catch (NumberFormatException e) {
+				
+				throw new UnsupportedOperationException();
+			}
+		}
+		
+		
+		private static BitSet single(char c) {
+			
+			BitSet set = new BitSet(ALPHABET);
+			if(c < ALPHABET)
+				set.set(c);
+			
+			return set;
+		}
+		
+		
+		private static BitSet range(boolean negate, char start, char end) {
+			
+			BitSet set = new BitSet(ALPHABET);
+			set.set(start, end + 1);
+			if(negate)
+				set.flip(0, ALPHABET);
+			
+			return set;
+		}
+	}
+}
@@ -10,9 +10,23 @@ public class LexerRule {
 
 	public final String token;
 	public final boolean ignore;
-	private final Matcher matcher;
-	private boolean matches, valid;
-	private int matchLength;
+	public final String pattern;
+	
+	/**
+	 * The text matched by this rule if its pattern can only match one String, otherwise null.
+	 */
+	public final String text;
+	
+	/**
+	 * The scanner that matches this rule, or null if it is matched by its pattern.
+	 */
+	public final LexerScanner scanner;
+	private final Pattern regex;
+	
+	/**
+	 * The id of the token in the compiled form of the Grammar this rule belongs to, or -1 if it hasn't been compiled.
+	 */
+	int id = -1;
 
 	/**
 	 * Constructs a new rule for construction LexerTokens.
@@ -22,8 +36,11 @@ public class LexerRule {
 	public LexerRule(String token, String rule) {
 		
 		this.token = token;
+		this.pattern = rule;
 		ignore = false;
-		matcher = Pattern.compile(rule).matcher("");
+		text = getFixedText(rule);
+		scanner = null;
+		regex = Pattern.compile(rule);
 	}
 	
 	/**
@@ -35,51 +52,153 @@ public class LexerRule {
 	public LexerRule(String token, String rule, boolean ignore) {
 
 		this.token = token;
+		this.pattern = rule;
 		this.ignore = ignore;
-		matcher = Pattern.compile(rule).matcher("");
+		text = getFixedText(rule);
+		scanner = null;
+		regex = Pattern.compile(rule);
 	}
 	
 	/**
-	 * Attempts to match this token with the specified input.
-	 * @param token The input to match.
-	 * @param offset The offset into the input to begin matching.
+	 * Constructs a new rule for construction LexerTokens that is matched by a hand-written scanner instead of a regex.
+	 * @param token The name of the Token.
+	 * @param scanner The scanner that matches the Token.
+	 * @param ignore Whether or not tokens lexed using this rule should be thrown out.
 	 */
-	public void setInput(StringBuffer token, int offset) {
+	public LexerRule(String token, LexerScanner scanner, boolean ignore) {
 		
-		matcher.reset(token);
-		matcher.region(offset, token.length());
-		matches = matcher.lookingAt();
+		this.token = token;
+		this.pattern = null;
+		this.ignore = ignore;
+		text = null;
+		this.scanner = scanner;
+		regex = null;
+	}
+	
+	/**
+	 * Finds the only String a pattern can match, for patterns made up entirely of literal characters,
+	 * such as "=" or "\{". Punctuation tokens all share this String rather than each copying their own.
+	 * @param rule The pattern in regex.
+	 * @return The text matched by the pattern, or null if it can match more than one String.
+	 */
+	private static String getFixedText(String rule) {
 		
-		if(matches)
-			matchLength = matcher.end() - matcher.start();
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < rule.length(); ++i) {
+			
+			char c = rule.charAt(i);
+			if(c == '\\') {
+				
+				//Only escaped punctuation is a literal, escaped letters are classes like \d
+				if(++i == rule.length() || Character.isLetterOrDigit(rule.charAt(i)))
+					return null;
+				
+				text.append(rule.charAt(i));
+			}
+			else if("[](){}|*+?.^$".indexOf(c) != -1) {
+				
+				return null;
+			}
+			else {
+				
+				text.append(c);
+			}
+		}
 		
-		valid = matcher.hitEnd();
+		return text.length() == 0 ? null : text.toString();
 	}
 	
 	/**
-	 * Checks if this LexerRule can still be matched.
-	 * @return False is this LexerRule cannot be matched.
+	 * Creates the state used to match this rule against some input. A LexerRule may be shared by every Lexer
+	 * of a Grammar, so each Lexer matches it using a Match of its own.
+	 * @return The new Match.
 	 */
-	public boolean valid() {
+	public Match matcher() {
 		
-		return valid;
+		return new Match(this);
 	}
 	
 	/**
-	 * Checks if the rule is matched on the given input.
-	 * @return True if the rule is matched.
+	 * Checks if a token matched by this rule could start with the specified character.
+	 * @param c The first character of the input.
+	 * @return False if this rule can't match any input starting with the character.
 	 */
-	public boolean matches() {
+	public boolean canStartWith(char c) {
+		
+		Match match = matcher();
+		match.setInput(String.valueOf(c), 0);
 		
-		return matches;
+		//An empty match is never used, so it only counts if more input could make it longer
+		return (match.matches() && match.matchLength() > 0) || match.valid();
 	}
 	
 	/**
-	 * Retrieves the length of the matched input.
-	 * @return The length.
+	 * The result of matching a LexerRule against the input of a single Lexer.
 	 */
-	public int matchLength() {
+	public static class Match {
+		
+		public final LexerRule rule;
+		private final Matcher matcher;
+		private boolean matches, valid;
+		private int matchLength;
+	
+		
+		private Match(LexerRule rule) {
+	
+			this.rule = rule;
+			matcher = rule.regex == null ? null : rule.regex.matcher("");
+		}
+		
+		/**
+		 * Attempts to match the rule with the specified input.
+		 * @param token The input to match.
+		 * @param offset The offset into the input to begin matching.
+		 */
+		public void setInput(CharSequence token, int offset) {
+			
+			if(rule.scanner != null) {
+				
+				matchLength = rule.scanner.scan(token, offset);
+				matches = matchLength > 0;
+				valid = matchLength == -1;
+				return;
+			}
+			
+			matcher.reset(token);
+			matcher.region(offset, token.length());
+			matches = matcher.lookingAt();
+			
+			if(matches)
+				matchLength = matcher.end() - matcher.start();
+			
+			valid = matcher.hitEnd();
+		}
+		
+		/**
+		 * Checks if the rule can still be matched.
+		 * @return False is the rule cannot be matched.
+		 */
+		public boolean valid() {
+			
+			return valid;
+		}
+		
+		/**
+		 * Checks if the rule is matched on the given input.
+		 * @return True if the rule is matched.
+		 */
+		public boolean matches() {
+			
+			return matches;
+		}
 		
-		return matchLength;
+		/**
+		 * Retrieves the length of the matched input.
+		 * @return The length.
+		 */
+		public int matchLength() {
+			
+			return matchLength;
+		}
 	}
 }
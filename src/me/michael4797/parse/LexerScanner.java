@@ -0,0 +1,17 @@
+package me.michael4797.parse;
+
+/**
+ * A hand-written matcher for a single type of token, used in place of a regex for tokens
+ * that are common enough, or whose patterns backtrack badly enough, to be worth scanning directly.
+ */
+public interface LexerScanner {
+
+	/**
+	 * Matches the token at the specified offset of the input.
+	 * @param input The input to match.
+	 * @param offset The offset into the input to begin matching.
+	 * @return The length of the token, 0 if the input doesn't start with the token, or -1 if the
+	 * input ends before the token does.
+	 */
+	public int scan(CharSequence input, int offset);
+}
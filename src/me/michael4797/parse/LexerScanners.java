@@ -0,0 +1,126 @@
+package me.michael4797.parse;
+
+/**
+ * Scanners for the tokens shared by most Grammars, whitespace, comments and quoted strings.
+ */
+public final class LexerScanners {
+
+	/**
+	 * Matches a run of spaces, tabs, line breaks and null characters, the same as the pattern "[\t\r\n \x00]+".
+	 */
+	public static final LexerScanner whiteSpace = new WhiteSpaceScanner();
+	
+	/**
+	 * Matches a comment from // up to and including the end of the line, the same as the pattern "//[^\n]*\n".
+	 */
+	public static final LexerScanner singleLineComment = new SingleLineCommentScanner();
+	
+	/**
+	 * Matches a comment from /* up to and including the first * followed by a /.
+	 */
+	public static final LexerScanner multiLineComment = new MultiLineCommentScanner();
+	
+	/**
+	 * Matches a String surrounded by double quotes, where a backslash escapes the character after it,
+	 * the same as the pattern "([^"\\]*(\\.[^"\\]*)*)".
+	 */
+	public static final LexerScanner quotedString = new QuotedStringScanner();
+	
+	
+	private LexerScanners() {}
+	
+	
+	private static class WhiteSpaceScanner implements LexerScanner {
+		
+		@Override
+		public int scan(CharSequence input, int offset) {
+			
+			int i = offset;
+			while(i < input.length()) {
+				
+				char c = input.charAt(i);
+				if(c != ' ' && c != '\t' && c != '\r' && c != '\n' && c != '\0')
+					break;
+				
+				++i;
+			}
+			
+			return i - offset;
+		}
+	}
+	
+	
+	private static class SingleLineCommentScanner implements LexerScanner {
+		
+		@Override
+		public int scan(CharSequence input, int offset) {
+			
+			int length = input.length();
+			if(offset + 1 >= length)
+				return offset < length && input.charAt(offset) == '/' ? -1 : 0;
+			
+			if(input.charAt(offset) != '/' || input.charAt(offset + 1) != '/')
+				return 0;
+			
+			for(int i = offset + 2; i < length; ++i)
+				if(input.charAt(i) == '\n')
+					return i + 1 - offset;
+			
+			//The comment has to end with a line break
+			return -1;
+		}
+	}
+	
+	
+	private static class MultiLineCommentScanner implements LexerScanner {
+		
+		@Override
+		public int scan(CharSequence input, int offset) {
+			
+			int length = input.length();
+			if(offset + 1 >= length)
+				return offset < length && input.charAt(offset) == '/' ? -1 : 0;
+			
+			if(input.charAt(offset) != '/' || input.charAt(offset + 1) != '*')
+				return 0;
+			
+			for(int i = offset + 3; i < length; ++i)
+				if(input.charAt(i) == '/' && input.charAt(i - 1) == '*')
+					return i + 1 - offset;
+			
+			return -1;
+		}
+	}
+	
+	
+	private static class QuotedStringScanner implements LexerScanner {
+		
+		@Override
+		public int scan(CharSequence input, int offset) {
+			
+			int length = input.length();
+			if(offset >= length || input.charAt(offset) != '"')
+				return 0;
+			
+			for(int i = offset + 1; i < length; ++i) {
+				
+				char c = input.charAt(i);
+				if(c == '"')
+					return i + 1 - offset;
+				
+				if(c == '\\') {
+					
+					if(++i == length)
+						return -1;
+					
+					//A backslash can't escape a line break
+					c = input.charAt(i);
+					if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+						return 0;
+				}
+			}
+			
+			return -1;
+		}
+	}
+}
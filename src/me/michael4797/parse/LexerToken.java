@@ -2,12 +2,88 @@ package me.michael4797.parse;
 
 /**
  * A type of token that acts as a leaf to the AST. They do not have children.
+ * Tokens created by a Lexer only hold their position in the input, their text is only
+ * copied out of the input if it's asked for, and short tokens share the text of earlier ones with the same text.
  */
 public class LexerToken extends Token {
 
+	private final CharSequence source;
+	private final int offset;
+	private final int length;
+	private final InternTable table;
+	private InternTable.Entry entry;
+	private String value;
+	
+	/**
+	 * The position of this token in the TokenStream being parsed, assigned by the Parser as it reads the token.
+	 */
+	int position;
+	
+
 	public LexerToken(String name, String value) {
 		
 		super(name, value);
+		this.value = value;
+		source = null;
+		offset = 0;
+		length = value.length();
+		table = null;
 	}
 
+	/**
+	 * Constructs a token whose text is the specified range of the input.
+	 * @param name The name of the token, as specified in the Grammar.
+	 * @param id The id of the token in the compiled Grammar, or -1 if it isn't known.
+	 * @param source The input the token was lexed from.
+	 * @param offset The index of the first character of the token in the input.
+	 * @param length The number of characters in the token.
+	 * @param value The text of the token if it is always the same, otherwise null.
+	 * @param table The table of text shared by tokens of the same Grammar, or null if the text shouldn't be shared.
+	 */
+	LexerToken(String name, int id, CharSequence source, int offset, int length, String value, InternTable table) {
+		
+		super(name, null);
+		this.id = id;
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+		this.value = value;
+		this.table = table;
+	}
+	
+	
+	@Override
+	public String getValue() {
+		
+		//Racing threads would only look up the same text twice
+		if(value == null) {
+			
+			if(table != null)
+				entry = table.get(source, offset, length);
+			
+			value = entry != null ? entry.value : source.subSequence(offset, offset + length).toString();
+		}
+		
+		return value;
+	}
+	
+	
+	@Override
+	public String getLowerCaseValue() {
+		
+		String value = getValue(); //Looks up the shared text, if there is any
+		if(entry != null)
+			return entry.lowerCase;
+		
+		return value.toLowerCase();
+	}
+	
+	/**
+	 * Gets the number of characters in this token, without copying its text.
+	 * @return The length of this token.
+	 */
+	public int length() {
+		
+		return length;
+	}
 }
@@ -2,20 +2,38 @@ package me.michael4797.parse;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 
 /**
  * The base class used to construct ParserTokens from a TokenStream based
  * on a list of rules.
+ * The rules are parsed in their compiled form, where every rule and token is identified by an int.
  */
 public class Parser {
 	
 	private final TokenStream in;
 	protected final LinkedHashMap<String, ParserRule> rules;
+	private final CompiledGrammar grammar;
 	
 	private final ArrayDeque<LexerToken> backlog = new ArrayDeque<>();
 	
+	/**
+	 * Used by failed ParserFrames to reverse their tokens onto the backlog.
+	 */
+	private final ArrayDeque<LexerToken> tokenStack = new ArrayDeque<>();
+	
+	/**
+	 * The next token of the source, if it has been looked at but not read yet. It always comes after the backlog.
+	 */
+	private LexerToken lookahead;
+	
+	/**
+	 * The number of tokens read from the source so far.
+	 */
+	private int position;
+	
 	/**
 	 * Creates a new parser that reads LexerTokens from the specified TokenStream and constructs ParserTokens using
 	 * the specified ParserRules.
@@ -24,8 +42,20 @@ public class Parser {
 	 */
 	public Parser(TokenStream source, LinkedHashMap<String, ParserRule> parserRules) {
 		
+		this(source, parserRules, new CompiledGrammar(parserRules, Collections.emptyList()));
+	}
+	
+	/**
+	 * Creates a new parser that uses rules that have already been compiled.
+	 * @param source The source of LexerTokens.
+	 * @param parserRules The ParserRules by which Tokens are constructed.
+	 * @param grammar The compiled form of the ParserRules.
+	 */
+	Parser(TokenStream source, LinkedHashMap<String, ParserRule> parserRules, CompiledGrammar grammar) {
+		
 		in = source;
 		rules = parserRules;
+		this.grammar = grammar;
 	}
 	
 	/**
@@ -39,6 +69,29 @@ public class Parser {
 		return parse(token, new ParserContext());
 	}
 	
+	/**
+	 * Attempts to parse the specified token at the current location, reporting it to the specified listener instead of returning it.
+	 * The children of the parsed token are reported as soon as nothing can backtrack over them, and are then dropped by the Parser.
+	 * This includes the children of any right-recursive tokens collapsed into it, so for a list of the form "List := Item List | /-",
+	 * each item is reported as soon as it's parsed and only the item being parsed is held in memory, rather than the whole list.
+	 * Anything nested deeper is reported along with the child of the parsed token it belongs to.
+	 * @param token The name of the token to parse.
+	 * @param listener The listener to report the parsed token to.
+	 * @return True if the token was parsed, false if it could not be, in which case nothing is reported.
+	 * @throws ParserException If an error is encountered with one of the ParserRules, in which case some of the token may have been reported.
+	 */
+	public boolean parse(String token, ParserListener listener) throws ParserException {
+		
+		ParserContext context = new ParserContext();
+		EventStream stream = new EventStream(listener, grammar, context);
+		ParserToken parsed = parse(token, context, stream);
+		if(parsed == null)
+			return false;
+		
+		stream.finish(parsed);
+		return true;
+	}
+	
 	/**
 	 * Attempts to parse the specified token at the current location.
 	 * @param token The name of the token to parse.
@@ -48,32 +101,59 @@ public class Parser {
 	 */
 	protected ParserToken parse(String token, ParserContext context) throws ParserException {
 		
+		return parse(token, context, null);
+	}
+	
+	/**
+	 * Attempts to parse the specified token at the current location.
+	 * @param token The name of the token to parse.
+	 * @param context The cached parser information, used to accelerate the parsing operation.
+	 * @param stream The stream to report committed tokens to as they're parsed, or null if the whole token should be returned.
+	 * @return The parsed token, or null if it could not be parsed. Any children already reported to the stream are left out of it.
+	 * @throws ParserException If an error is encountered with one of the ParserRules.
+	 */
+	private ParserToken parse(String token, ParserContext context, EventStream stream) throws ParserException {
+		
 		ParserToken parsed = null;
-		String next = null;
+		int next = 0;
+		boolean isRule = false;
 		LexerToken nextToken = null;
 		Token matchedToken = null;
 
 		boolean previouslyFailed = false;
 		ParserToken previouslySucceeded = null;
+		int[] predicted = null;
 		
 		//We use a Stack of ParserFrames instead of calling this method recursively
 		//Since ParserRules can be complex and recursive, calling this method recursively
 		//is very likely to cause a stack overflow.
 		ArrayDeque<ParserFrame> frames = new ArrayDeque<>();
 		//Create the first frame used for parsing our specified token.
-		ParserFrame frame = new ParserFrame(token, rules);
+		int rule = grammar.getId(token);
+		if(!grammar.isRule(rule))
+			throw new ParserException("No rule exists for parsing token " + token);
+		
+		predicted = predict(rule);
+		if(predicted.length == 0)
+			return null;
+		
+		ParserFrame frame = createFrame(rule, predicted);
+		if(stream != null)
+			stream.start(rule, frame);
 		
 		while(true) {
 			
 			//Get the next token in the current pattern we're trying to match.
 			next = frame.next();
+			isRule = grammar.isRule(next);
 			
 			//If we have some tokens on the backlog, then it's possible we've tried to parse this token already.
-			if(backlog.size() > 0 && rules.containsKey(next)) {
+			if(backlog.size() > 0 && isRule) {
 			
 				//So check the context to see if we've already tried and cached the result.
-				previouslyFailed = context.hasFailedParse(next, backlog.peek());
-				previouslySucceeded = context.hasSucceededParse(next, backlog.peek());
+				int start = backlog.peek().position;
+				previouslyFailed = context.hasFailedParse(next, start);
+				previouslySucceeded = context.hasSucceededParse(next, start);
 			}
 			else {
 				
@@ -81,16 +161,25 @@ public class Parser {
 				previouslySucceeded = null;
 			}
 			
+			if(!previouslyFailed && previouslySucceeded == null && isRule) {
+				
+				//If none of the patterns can start with the next token, it fails the same as if we had cached the failure
+				predicted = predict(next);
+				previouslyFailed = predicted.length == 0;
+			}
+			
 			//If we haven't cached the result, and the next token is a ParserRule, recurse by adding a new frame to the stack.
-			if(!next.isEmpty() && !previouslyFailed && previouslySucceeded == null && rules.containsKey(next)) {
+			if(!previouslyFailed && previouslySucceeded == null && isRule) {
 				
 				frames.push(frame);
-				frame = new ParserFrame(next, rules);
+				frame = createFrame(next, predicted);
+				if(stream != null)
+					stream.pushed(frames, next);
 			}
 			else {
 				
 				//If we cached the outcome of this parse operation, or we're looking for an empty string, don't read the next token.
-				if(previouslyFailed || previouslySucceeded != null || next.isEmpty()) {
+				if(previouslyFailed || previouslySucceeded != null || next == CompiledGrammar.LAMBDA) {
 				
 					nextToken = null;
 				}
@@ -106,14 +195,15 @@ public class Parser {
 				}
 				
 				//If we succeeded in matching the next token
-				if(!previouslyFailed && (next.isEmpty() || previouslySucceeded != null || (nextToken != null && nextToken.name.equals(next)))) {
+				if(!previouslyFailed && (next == CompiledGrammar.LAMBDA || previouslySucceeded != null || (nextToken != null && nextToken.id == next))) {
 					
 					//If we succeeded because we cached the result
 					if(previouslySucceeded != null) {
 						
 						//Remove all the matched tokens from the backlog
 						matchedToken = previouslySucceeded;
-						for(Iterator<LexerToken> iterator = previouslySucceeded.iterator(); iterator.hasNext(); iterator.next())
+						int start = getPosition();
+						for(int end = context.getParseEnd(next, start); start < end; ++start)
 							nextToken();
 
 						//Collapse any tokens that only have 1 child
@@ -131,42 +221,60 @@ public class Parser {
 						if(frames.isEmpty()) //If we just matched the last frame, we're done
 							return parsed;
 						
+						ParserFrame completed = frame;
 						frame = frames.pop();
+						if(stream != null)
+							stream.popped(frames.size());
 						
 						//If we didn't parse an empty string, then we should cache the result in case we need it later.
-						if(!next.isEmpty()) {
-						
-							LexerToken origin = parsed.iterator().next();
-							context.succeedParse(parsed, origin);
-						}
+						if(next != CompiledGrammar.LAMBDA)
+							context.succeedParse(completed.id, parsed, completed.start, getPosition());
 						
 						matchedToken = parsed;
 					}
+					
+					if(stream != null)
+						stream.matched(frame, frames);
 				}
 				//The next token didn't match out pattern
 				else {
 					//Fail the current pattern in the Frame and try the next one
 					//If there is no next pattern in the frame, then pop a frame
 					//from the stack and fail that pattern too.
-					while(!frame.fail(nextToken, backlog)) {
+					while(!frame.fail(nextToken, backlog, tokenStack)) {
 
 						if(frames.isEmpty()) //If we failed the last frame, we've lost all hope
 							return null;
 						
 						//If we put any effort at all into parsing this Token, we should cache the result 
-						if(!previouslyFailed && frame.children.size() > 0) {
-							
-							LexerToken origin = frame.children.get(0).iterator().next();
-							context.failParse(frame.token, origin);
-						}
+						if(!previouslyFailed && frame.children.size() > 0)
+							context.failParse(frame.id, frame.start);
 						
 						frame = frames.pop();
 						nextToken = null;
+						if(stream != null)
+							stream.popped(frames.size());
 					}
 				}
 			}
 		}
 	}
+	
+	/**
+	 * Creates the frame used to parse a token, starting at the current position.
+	 * @param id The id of the rule for the token.
+	 * @param predicted The indices of the patterns to try in order.
+	 * @return The new frame.
+	 * @throws ParserException If the rule has no patterns.
+	 */
+	private ParserFrame createFrame(int id, int[] predicted) throws ParserException {
+		
+		CompiledGrammar.Precedence precedence = grammar.precedence[id];
+		if(precedence != null)
+			return new PrecedenceFrame(this, id, precedence, predicted, getPosition());
+		
+		return new ParserFrame(grammar, id, predicted, getPosition());
+	}
 		
 	/**
 	 * Reads the next token from either the the source TokenStream or the backlog.
@@ -175,10 +283,86 @@ public class Parser {
 	 */
 	protected LexerToken nextToken() throws ParserException {
 		
-		if(backlog.isEmpty())
-			return in.nextToken();
-		else
+		if(!backlog.isEmpty())
 			return backlog.poll();
+		
+		if(lookahead != null) {
+			
+			LexerToken next = lookahead;
+			lookahead = null;
+			return next;
+		}
+		
+		return read();
+	}
+	
+	/**
+	 * Looks at the next token without reading it.
+	 * @return The next token, or null if there are none left.
+	 * @throws ParserException If there's an error reading the next token.
+	 */
+	private LexerToken peekToken() throws ParserException {
+		
+		if(!backlog.isEmpty())
+			return backlog.peek();
+		
+		if(lookahead == null) {
+			
+			try {
+				
+				lookahead = read();
+			}catch(ParserEndOfStreamException e) {
+				
+				return null;
+			}
+		}
+		
+		return lookahead;
+	}
+	
+	/**
+	 * Reads a token from the source TokenStream, giving it its position and id.
+	 * @return The token.
+	 * @throws ParserException If there's an error reading the token.
+	 */
+	private LexerToken read() throws ParserException {
+		
+		LexerToken next = in.nextToken();
+		next.position = position++;
+		
+		//Tokens lexed by this Grammar already have their id, anything else is looked up by name.
+		//The names are the same String as the Grammar's, so they can be compared by reference.
+		if(next.id < 0 || next.id >= grammar.unknown || grammar.names[next.id] != next.name)
+			next.id = grammar.getId(next.name);
+		
+		return next;
+	}
+	
+	/**
+	 * Gets the position of the next token to be read, which is where the next token to be parsed starts.
+	 * The backlog always holds the tokens just before the lookahead, in order.
+	 * @return The position of the next token.
+	 */
+	private int getPosition() {
+		
+		if(!backlog.isEmpty())
+			return backlog.peek().position;
+		
+		if(lookahead != null)
+			return lookahead.position;
+		
+		return position;
+	}
+	
+	/**
+	 * Finds the patterns of a ParserRule that could match the next token.
+	 * @param rule The id of the rule to parse.
+	 * @return The indices of the patterns to try in order.
+	 * @throws ParserException If there's an error reading the next token.
+	 */
+	private int[] predict(int rule) throws ParserException {
+		
+		return grammar.predictions.predict(rule, peekToken());
 	}
 	
 	
@@ -188,38 +372,51 @@ public class Parser {
 	 */
 	private static class ParserFrame{
 		
-		private static final ArrayDeque<LexerToken> tokenStack = new ArrayDeque<>();
+		final String token;
+		final int id;
 		
-		private final String token;
-		private final ArrayList<Token> children = new ArrayList<>();
-		private final ArrayList<TokenPattern> patterns;
-		private ArrayList<String> tokens;
+		/**
+		 * The position of the first token this frame parses.
+		 */
+		private final int start;
+		final ArrayList<Token> children = new ArrayList<>();
+		private final int[][] patterns;
+		private final int[] predicted;
+		private int[] tokens;
 		private int patternIndex = 0;
 		private int tokenIndex = 0;
 		
 		
-		private ParserFrame(String token, LinkedHashMap<String, ParserRule> rules) throws ParserException {
+		private ParserFrame(CompiledGrammar grammar, int id, int[] predicted, int start) throws ParserException {
 			
-			this.token = token;
-			ParserRule rule = rules.get(token);
-			if(rule == null)
-				throw new ParserException("No rule exists for parsing token " + token);
+			token = grammar.names[id];
+			this.id = id;
+			this.start = start;
+			patterns = grammar.patterns[id];
 			
-			patterns = rule.patterns;
-			
-			if(patterns.size() == 0)
+			if(patterns.length == 0)
 				throw new ParserException("Rule for token " + token + " has no valid patterns");
 			
-			tokens = patterns.get(patternIndex++).pattern;
+			this.predicted = predicted;
+			tokens = nextPattern();
+		}
+		
+		/**
+		 * Moves on to the next pattern that could match.
+		 * @return The ids of the tokens of the pattern.
+		 */
+		private int[] nextPattern() {
+			
+			return patterns[predicted[patternIndex++]];
 		}
 		
 		/**
 		 * Gets the next token in the current pattern.
-		 * @return The name of the next token.
+		 * @return The id of the next token.
 		 */
-		private String next() {
+		int next() {
 			
-			return tokens.get(tokenIndex++);
+			return tokens[tokenIndex++];
 		}
 		
 		/**
@@ -227,12 +424,13 @@ public class Parser {
 		 * the newly parsed token.
 		 * @param parsed The newly parsed token.
 		 * @return If the current TokenPattern has been completely matched, the completed ParserToken is returned, otherwise, null.
+		 * @throws ParserException If there's an error reading the next token.
 		 */
-		private ParserToken matched(Token parsed) {
+		ParserToken matched(Token parsed) throws ParserException {
 			
 			if(parsed != null) {
 				
-				if(parsed.name.equals(token))
+				if(parsed.id == id)
 					for(int i = 0; i < parsed.getChildCount(); ++i) //If the TokenPattern is defined recursively, collapse the tail-end recursion into a list
 						children.add(parsed.getChild(i));
 				else if(parsed.getChildCount() == 1) //If the Token we just parsed only has one child, collapse that token.
@@ -242,19 +440,34 @@ public class Parser {
 			}
 					
 			
-			if(tokenIndex >= tokens.size())
-				return new ParserToken(token, children);
+			if(tokenIndex >= tokens.length)
+				return new ParserToken(token, id, children);
 			
 			return null;
 		}
 		
+		/**
+		 * Checks if the rest of the current pattern is certain to match, because every token left in it is a rule that can match an empty string.
+		 * @param grammar The compiled Grammar.
+		 * @return True if the rest of the pattern can't fail.
+		 */
+		boolean completes(CompiledGrammar grammar) {
+			
+			for(int i = tokenIndex; i < tokens.length; ++i)
+				if(tokens[i] != CompiledGrammar.LAMBDA && !grammar.predictions.isNullable(tokens[i]))
+					return false;
+			
+			return true;
+		}
+		
 		/**
 		 * Fail to parse the current TokenPattern.
 		 * @param failPoint The token that broke the pattern.
 		 * @param backlog The queue to add the failed token chain to.
+		 * @param tokenStack An empty stack used to reverse the order of the failed tokens.
 		 * @return True if there are more possible TokenPatterns in this Frame, false if it's a lost cause.
 		 */
-		private boolean fail(LexerToken failPoint, ArrayDeque<LexerToken> backlog) {
+		boolean fail(LexerToken failPoint, ArrayDeque<LexerToken> backlog, ArrayDeque<LexerToken> tokenStack) {
 			
 			//We can only iterate forwards through the children, but we need to add them backwards into our backlog
 			//so we use a stack to reverse their order.
@@ -271,10 +484,10 @@ public class Parser {
 			tokenIndex = 0;
 			children.clear();
 			
-			if(patternIndex >= patterns.size())
+			if(patternIndex >= predicted.length)
 				return false;
 						
-			tokens = patterns.get(patternIndex++).pattern;
+			tokens = nextPattern();
 			return true;
 		}
 		
@@ -285,4 +498,320 @@ public class Parser {
 			return token;
 		}
 	}
+	
+	/**
+	 * Helper class used to parse a level of a PrecedenceRule by precedence climbing.
+	 * Rather than one frame for each level, a single frame reads operands for as long as they're followed by an operator of
+	 * this level or a higher one, keeping them in order as its children. Once the operands end, they're grouped into a token
+	 * for each level of precedence.
+	 */
+	private static class PrecedenceFrame extends ParserFrame{
+		
+		private final Parser parser;
+		private final CompiledGrammar.Precedence rule;
+		
+		/**
+		 * The id of the operator following the last operand, which is matched next, or -1 if an operand is next.
+		 */
+		private int operator = -1;
+		
+		/**
+		 * Set once the operand after an operator fails, ending the frame without that operator.
+		 */
+		private boolean done;
+		
+		
+		private PrecedenceFrame(Parser parser, int id, CompiledGrammar.Precedence rule, int[] predicted, int start) throws ParserException {
+			
+			super(parser.grammar, id, predicted, start);
+			this.parser = parser;
+			this.rule = rule;
+		}
+		
+		
+		@Override
+		int next() {
+			
+			//Lambda matches without reading anything, so the parser completes the frame
+			if(done)
+				return CompiledGrammar.LAMBDA;
+			
+			if(operator != -1) {
+				
+				int next = operator;
+				operator = -1;
+				return next;
+			}
+			
+			return rule.operand;
+		}
+		
+		
+		@Override
+		ParserToken matched(Token parsed) throws ParserException {
+			
+			if(parsed == null)
+				return build();
+			
+			//Operands and operators alternate, so after an odd number of children we've just matched an operator
+			if(children.size() % 2 == 1) {
+				
+				children.add(parsed);
+				return null;
+			}
+			
+			children.add(parsed.getChildCount() == 1 ? parsed.getChild(0) : parsed);
+			LexerToken next = parser.peekToken();
+			if(next == null || rule.operators[next.id] < rule.level)
+				return build();
+			
+			operator = next.id;
+			return null;
+		}
+		
+		
+		@Override
+		boolean fail(LexerToken failPoint, ArrayDeque<LexerToken> backlog, ArrayDeque<LexerToken> tokenStack) {
+			
+			//Only an operand can fail, since an operator is only matched once we've seen that it's next
+			if(failPoint != null)
+				backlog.addFirst(failPoint);
+			
+			if(children.isEmpty())
+				return false;
+			
+			//Like a rule of the form "Operand Operator Level | Operand", an operator without an operand after it isn't part of the token
+			backlog.addFirst((LexerToken) children.remove(children.size() - 1));
+			done = true;
+			return true;
+		}
+		
+		/**
+		 * Groups the operands into the token for this frame's level.
+		 * @return The parsed token, containing either this level's operands and operators or the single token of the level above it.
+		 */
+		private ParserToken build() {
+			
+			int last = children.size() - 1;
+			if(last > 0 && getLowestLevel(0, last) == rule.level)
+				return build(rule.level, 0, last);
+			
+			ArrayList<Token> child = new ArrayList<>(1);
+			child.add(build(0, last));
+			return new ParserToken(token, id, child);
+		}
+		
+		/**
+		 * Groups a range of operands into the token for the lowest level of the operators between them.
+		 * @param from The index of the first operand.
+		 * @param to The index of the last operand.
+		 * @return The operand if there's only one, otherwise the parsed token.
+		 */
+		private Token build(int from, int to) {
+			
+			if(from == to)
+				return children.get(from);
+			
+			return build(getLowestLevel(from, to), from, to);
+		}
+		
+		/**
+		 * Groups a range of operands into a token for the specified level, split on the operators of that level.
+		 * @param level The level of the token.
+		 * @param from The index of the first operand.
+		 * @param to The index of the last operand.
+		 * @return The parsed token.
+		 */
+		private ParserToken build(int level, int from, int to) {
+			
+			ArrayList<Token> tokens = new ArrayList<>();
+			int start = from;
+			for(int i = from + 1; i < to; i += 2) {
+				
+				if(rule.operators[children.get(i).id] == level) {
+					
+					tokens.add(build(start, i - 1));
+					tokens.add(children.get(i));
+					start = i + 1;
+				}
+			}
+			
+			tokens.add(build(start, to));
+			return new ParserToken(parser.grammar.names[rule.levels[level]], rule.levels[level], tokens);
+		}
+		
+		
+		private int getLowestLevel(int from, int to) {
+			
+			int lowest = rule.levels.length;
+			for(int i = from + 1; i < to; i += 2)
+				lowest = Math.min(lowest, rule.operators[children.get(i).id]);
+			
+			return lowest;
+		}
+	}
+	
+	/**
+	 * Helper class used to report the children of the token being parsed to a ParserListener as soon as they're committed.
+	 * The children are held by the frames at the bottom of the stack that share the rule of the first frame, since each of
+	 * them is collapsed into the one below it when it completes. Once every frame on the stack is one of these, and each
+	 * is certain to complete with the pattern it's on, nothing can backtrack over their children, so they're reported
+	 * and dropped, along with the cached attempts that came before them.
+	 */
+	private static class EventStream {
+		
+		private final ParserListener listener;
+		private final CompiledGrammar grammar;
+		private final ParserContext context;
+		private int rule;
+		
+		/**
+		 * The number of frames at the bottom of the stack that are collapsed into the first frame.
+		 */
+		private int chain;
+		
+		/**
+		 * The number of frames at the bottom of the stack that are certain to complete with the pattern they're on,
+		 * once the frame above them does.
+		 */
+		private int committed;
+		
+		/**
+		 * The lowest frame on the stack that may hold children that haven't been reported.
+		 */
+		private int pending = Integer.MAX_VALUE;
+		private boolean entered;
+		
+		
+		private EventStream(ParserListener listener, CompiledGrammar grammar, ParserContext context) {
+			
+			this.listener = listener;
+			this.grammar = grammar;
+			this.context = context;
+		}
+		
+		/**
+		 * Called with the first frame of the parse.
+		 * @param rule The id of the rule being parsed.
+		 * @param frame The first frame.
+		 */
+		void start(int rule, ParserFrame frame) {
+			
+			this.rule = rule;
+			
+			//The children of a PrecedenceFrame are regrouped once it completes, so they can't be reported any earlier
+			chain = frame instanceof PrecedenceFrame ? 0 : 1;
+		}
+		
+		/**
+		 * Called after a new frame is pushed onto the stack.
+		 * @param frames The frames under the new one, the first of which is waiting for it to complete.
+		 * @param id The id of the rule of the new frame.
+		 */
+		void pushed(ArrayDeque<ParserFrame> frames, int id) {
+			
+			int depth = frames.size();
+			ParserFrame below = frames.peek();
+			
+			//The frame below can't advance until the new one completes, so whether it completes can be decided now
+			if(chain == depth && committed == depth - 1 && below.completes(grammar)) {
+				
+				//If all it has left is to collapse the new frame into itself, the new frame can take its place,
+				//so a long right-recursive list doesn't keep a frame for every item
+				if(id == rule && below.children.isEmpty() && below.tokenIndex == below.tokens.length) {
+					
+					frames.pop();
+					return;
+				}
+				
+				committed = depth;
+			}
+			
+			if(chain == depth && id == rule)
+				++chain;
+		}
+		
+		/**
+		 * Called after the top frame is popped from the stack.
+		 * @param depth The number of frames under the new top frame.
+		 */
+		void popped(int depth) {
+			
+			chain = Math.min(chain, depth + 1);
+			committed = Math.min(committed, depth);
+		}
+		
+		/**
+		 * Called after a token is added to the top frame, reporting every child held by the stack if they're committed.
+		 * @param top The top frame.
+		 * @param frames The frames under it.
+		 */
+		void matched(ParserFrame top, ArrayDeque<ParserFrame> frames) {
+			
+			int depth = frames.size();
+			pending = Math.min(pending, depth);
+			if(chain <= depth || committed < depth || !top.completes(grammar))
+				return;
+			
+			//Only the frames from the lowest with pending children up are reported, starting with the lowest
+			ArrayDeque<ParserFrame> reported = new ArrayDeque<>();
+			Iterator<ParserFrame> iterator = frames.iterator();
+			for(int i = pending; i < depth; ++i)
+				reported.push(iterator.next());
+			
+			reported.add(top);
+			enter();
+			for(ParserFrame frame: reported) {
+				
+				for(Token child: frame.children)
+					report(child);
+				
+				frame.children.clear();
+			}
+			
+			pending = Integer.MAX_VALUE;
+			
+			//Nothing before the committed tokens will be parsed again
+			context.clear();
+		}
+		
+		/**
+		 * Reports the rest of the parsed token, once it completes.
+		 * @param parsed The parsed token, without the children that have already been reported.
+		 */
+		void finish(ParserToken parsed) {
+			
+			enter();
+			for(int i = 0; i < parsed.getChildCount(); ++i)
+				report(parsed.getChild(i));
+			
+			listener.exitRule(parsed.name);
+		}
+		
+		
+		private void enter() {
+			
+			if(!entered) {
+				
+				listener.enterRule(grammar.names[rule]);
+				entered = true;
+			}
+		}
+		
+		
+		private void report(Token token) {
+			
+			if(token.getChildCount() == -1) {
+				
+				listener.token((LexerToken) token);
+				return;
+			}
+			
+			listener.enterRule(token.name);
+			for(int i = 0; i < token.getChildCount(); ++i)
+				report(token.getChild(i));
+			
+			listener.exitRule(token.name);
+		}
+	}
 }
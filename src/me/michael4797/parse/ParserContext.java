@@ -1,72 +1,208 @@
 package me.michael4797.parse;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 
 /**
  * Caches information regarding previous parsing attempts in the current Parser operation.
+ * Attempts are identified by the position of the token they started at and the id of the rule being parsed,
+ * packed into a single long that indexes an open-addressed table, so nothing is allocated per token.
  */
 public class ParserContext {
 
-	private final HashMap<LexerToken, HashSet<String>> failedTokens = new HashMap<>();
-	private final HashMap<LexerToken, HashMap<String, ParserToken>> succeededTokens = new HashMap<>();
+	/**
+	 * Stored in place of a parsed token to mark an attempt that failed.
+	 */
+	private static final Object FAILED = new Object();
+	
+	private final Memo failedTokens = new Memo();
+	private final Memo succeededTokens = new Memo();
 	
 
 	/**
 	 * Caches a failed parsing attempt to parse the specified token at the specified starting token.
-	 * @param token The token that failed to parse.
-	 * @param startingPoint The position at which it failed.
+	 * @param rule The id of the rule that failed to parse.
+	 * @param startingPoint The position of the token at which it failed.
 	 */
-	protected void failParse(String token, LexerToken startingPoint) {
+	protected void failParse(int rule, int startingPoint) {
 		
-		HashSet<String> failed = failedTokens.get(startingPoint);
-		if(failed == null) {
-			
-			failed = new HashSet<>();
-			failedTokens.put(startingPoint, failed);
-		}
-		
-		failed.add(token);
+		failedTokens.put(getKey(rule, startingPoint), FAILED, startingPoint);
 	}
 	
 	/**
 	 * Caches a successful parsing attempt at parsing the specified token at the specified starting token.
+	 * @param rule The id of the rule that successfully parsed.
 	 * @param token The token that successfully parsed.
-	 * @param startingPoint The position at which it was parsed.
+	 * @param startingPoint The position of the token at which it was parsed.
+	 * @param end The position after the last token that was parsed.
 	 */
-	protected void succeedParse(ParserToken token, LexerToken startingPoint) {
-		
-		HashMap<String, ParserToken> tokens = succeededTokens.get(startingPoint);
-		if(tokens == null) {
-			
-			tokens = new HashMap<>();
-			succeededTokens.put(startingPoint, tokens);
-		}
+	protected void succeedParse(int rule, ParserToken token, int startingPoint, int end) {
 		
-		tokens.put(token.name, token);
+		succeededTokens.put(getKey(rule, startingPoint), token, end);
 	}
 	
 	/**
 	 * Checks if the specified token has previously failed at being parsed at the specified location.
-	 * @param token The token to check.
+	 * @param rule The id of the rule to check.
 	 * @param startingPoint The position to check.
 	 * @return True if the token has previously failed to be parsed at the specified location.
 	 */
-	protected boolean hasFailedParse(String token,  LexerToken startingPoint) {
+	protected boolean hasFailedParse(int rule, int startingPoint) {
 		
-		HashSet<String> failed = failedTokens.get(startingPoint);
-		return failed != null && failed.contains(token);
+		return failedTokens.get(getKey(rule, startingPoint)) != null;
 	}
 	
 	/**
 	 * Checks if the specified token has previously succeeded at being parsed at the specified location.
-	 * @param token The token to check.
+	 * @param rule The id of the rule to check.
 	 * @param startingPoint The position to check.
 	 * @return The cached token that was parsed at the specified location, or null if it doesn't exist.
 	 */
-	protected ParserToken hasSucceededParse(String token, LexerToken startingPoint) {
+	protected ParserToken hasSucceededParse(int rule, int startingPoint) {
 		
-		HashMap<String, ParserToken> succeeded = succeededTokens.get(startingPoint);
-		return succeeded != null ? succeeded.get(token) : null;
+		return (ParserToken) succeededTokens.get(getKey(rule, startingPoint));
+	}
+	
+	/**
+	 * Gets where a previously succeeded parsing attempt ended, so its tokens can be skipped.
+	 * @param rule The id of the rule that successfully parsed.
+	 * @param startingPoint The position at which it was parsed.
+	 * @return The position after the last token that was parsed.
+	 */
+	protected int getParseEnd(int rule, int startingPoint) {
+		
+		return succeededTokens.getEnd(getKey(rule, startingPoint));
+	}
+	
+	
+	/**
+	 * Forgets every cached attempt, once the Parser can no longer backtrack to any of them.
+	 */
+	protected void clear() {
+		
+		failedTokens.clear();
+		succeededTokens.clear();
+	}
+	
+	
+	private static long getKey(int rule, int startingPoint) {
+		
+		return ((long) startingPoint << 32) | rule;
+	}
+	
+	/**
+	 * Helper class mapping keys to values and the position each attempt ended at, with linear probing.
+	 * Keys are never negative, so -1 marks an empty slot.
+	 */
+	private static class Memo {
+		
+		private long[] keys = newKeys(1024);
+		private Object[] values = new Object[1024];
+		private int[] ends = new int[1024];
+		private int size;
+		
+		
+		private Object get(long key) {
+			
+			int slot = find(key);
+			return slot == -1 ? null : values[slot];
+		}
+		
+		
+		private int getEnd(long key) {
+			
+			return ends[find(key)];
+		}
+		
+		
+		private int find(long key) {
+			
+			if(size == 0)
+				return -1;
+			
+			int mask = keys.length - 1;
+			for(int i = hash(key) & mask; keys[i] != -1; i = (i + 1) & mask)
+				if(keys[i] == key)
+					return i;
+			
+			return -1;
+		}
+		
+		
+		private void put(long key, Object value, int end) {
+			
+			//Keep the table at most half full so probes stay short
+			if(size * 2 >= keys.length)
+				grow();
+			
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			for(; keys[i] != -1; i = (i + 1) & mask) {
+				
+				if(keys[i] == key) {
+					
+					values[i] = value;
+					ends[i] = end;
+					return;
+				}
+			}
+			
+			keys[i] = key;
+			values[i] = value;
+			ends[i] = end;
+			++size;
+		}
+		
+		
+		private void clear() {
+			
+			if(size == 0)
+				return;
+			
+			Arrays.fill(keys, -1);
+			Arrays.fill(values, null);
+			size = 0;
+		}
+		
+		
+		private void grow() {
+			
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+			int[] oldEnds = ends;
+			keys = newKeys(oldKeys.length * 2);
+			values = new Object[oldValues.length * 2];
+			ends = new int[oldEnds.length * 2];
+			
+			int mask = keys.length - 1;
+			for(int j = 0; j < oldKeys.length; ++j) {
+				
+				if(oldKeys[j] == -1)
+					continue;
+				
+				int i = hash(oldKeys[j]) & mask;
+				while(keys[i] != -1)
+					i = (i + 1) & mask;
+				
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				ends[i] = oldEnds[j];
+			}
+		}
+		
+		
+		private static long[] newKeys(int length) {
+			
+			long[] keys = new long[length];
+			Arrays.fill(keys, -1);
+			return keys;
+		}
+		
+		
+		private static int hash(long key) {
+			
+			//Positions are sequential, so mix them into the high bits before taking the low ones
+			long hash = key * 0x9E3779B97F4A7C15L;
+			return (int) (hash >>> 32);
+		}
 	}
 }
@@ -0,0 +1,28 @@
+package me.michael4797.parse;
+
+/**
+ * Receives the tokens parsed by a Parser as a series of events, rather than as a tree.
+ * The events are a walk of the same tree the Parser would otherwise return, in the order the tokens appear in the input.
+ * Each ParserToken is reported as an enterRule, followed by its children, followed by an exitRule, while each LexerToken
+ * is reported as a single token event.
+ */
+public interface ParserListener {
+
+	/**
+	 * Called when a token parsed by a ParserRule begins, before any of its children.
+	 * @param rule The name of the rule.
+	 */
+	public void enterRule(String rule);
+	
+	/**
+	 * Called for each LexerToken, in the order they were read.
+	 * @param token The token.
+	 */
+	public void token(LexerToken token);
+	
+	/**
+	 * Called when a token parsed by a ParserRule ends, after all of its children.
+	 * @param rule The name of the rule.
+	 */
+	public void exitRule(String rule);
+}
@@ -16,6 +16,18 @@ public class ParserToken extends Token {
 		this.children = children;
 	}
 	
+	/**
+	 * Constructs a token parsed by the rule with the specified id in the compiled Grammar.
+	 * @param name The name of the rule.
+	 * @param id The id of the rule.
+	 * @param children The children of the token.
+	 */
+	ParserToken(String name, int id, ArrayList<Token> children) {
+		
+		this(name, children);
+		this.id = id;
+	}
+	
 	
 	@Override
 	public int getChildCount() {
@@ -0,0 +1,145 @@
+package me.michael4797.parse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A TokenStream that reads the tokens of another TokenStream on a separate thread, so lexing the input
+ * overlaps with whatever is consuming the tokens. Tokens are passed between the threads in batches through
+ * a bounded queue, so the lexing thread never gets too far ahead of the consumer.
+ * If the stream isn't read until it ends, it must be closed so that the lexing thread stops.
+ */
+public class PipelinedTokenStream implements TokenStream, AutoCloseable {
+
+	/**
+	 * The number of tokens passed between the threads at once.
+	 */
+	private static final int BATCH_SIZE = 1024;
+	
+	/**
+	 * The number of batches the lexing thread may get ahead of the consumer.
+	 */
+	private static final int MAX_BATCHES = 16;
+	
+	private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(MAX_BATCHES);
+	private final Thread lexer;
+	private Batch batch;
+	private int index;
+	
+	/**
+	 * Starts reading tokens from the specified source on a new thread.
+	 * The source must not be used by anything else once it's given to this stream.
+	 * @param source The source of LexerTokens.
+	 */
+	public PipelinedTokenStream(TokenStream source) {
+		
+		lexer = new Thread(() -> lex(source), "PipelinedTokenStream");
+		lexer.setDaemon(true);
+		lexer.start();
+	}
+	
+	
+	@Override
+	public LexerToken nextToken() throws ParserException {
+		
+		if(batch == null || index == batch.size) {
+			
+			//Once the source fails, it fails on every call after
+			if(batch != null && batch.error != null)
+				fail(batch.error);
+			
+			batch = takeBatch();
+			index = 0;
+			if(batch.size == 0 && batch.error != null)
+				fail(batch.error);
+		}
+		
+		return batch.tokens[index++];
+	}
+	
+	/**
+	 * Stops reading tokens from the source, if it hasn't ended already.
+	 */
+	@Override
+	public void close() {
+		
+		lexer.interrupt();
+	}
+	
+	/**
+	 * Rethrows the exception that stopped the source, on the thread reading from this stream.
+	 * @param error The exception thrown by the source.
+	 * @throws ParserException If the source couldn't read a token.
+	 */
+	private static void fail(Throwable error) throws ParserException {
+		
+		if(error instanceof ParserException)
+			throw (ParserException) error;
+		
+		if(error instanceof RuntimeException)
+			throw (RuntimeException) error;
+		
+		throw (Error) error;
+	}
+	
+	/**
+	 * Waits for the lexing thread to pass along the next batch of tokens.
+	 * @return The next batch.
+	 * @throws ParserException If the thread is interrupted while waiting.
+	 */
+	private Batch takeBatch() throws ParserException {
+		
+		try {
+			
+			return batches.take();
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new ParserException("Interrupted while waiting for tokens", e);
+		}
+	}
+	
+	/**
+	 * Reads tokens from the source in batches until it fails or ends, run by the lexing thread.
+	 * @param source The source of LexerTokens.
+	 */
+	private void lex(TokenStream source) {
+		
+		try {
+			
+			while(true) {
+				
+				Batch next = new Batch();
+				try {
+					
+					while(next.size < BATCH_SIZE) {
+						
+						LexerToken token = source.nextToken();
+						next.tokens[next.size++] = token;
+					}
+				} catch (Throwable e) {
+					
+					//Handed over to be thrown by the consumer, including the end of the stream
+					next.error = e;
+				}
+				
+				batches.put(next);
+				if(next.error != null)
+					return;
+			}
+		} catch (InterruptedException e) {
+			
+			//The stream was closed, nobody is waiting for the rest of the tokens
+		}
+	}
+	
+	/**
+	 * Helper class containing the tokens read at once, and the exception that stopped the source if it did.
+	 */
+	private static class Batch {
+		
+		private final LexerToken[] tokens = new LexerToken[BATCH_SIZE];
+		private int size;
+		private Throwable error;
+	}
+}
@@ -0,0 +1,71 @@
+package me.michael4797.parse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A ParserRule for one level of a table of binary operators, parsed by precedence climbing instead of as a cascade of rules.
+ * Parsing a level reads a series of operands separated by the operators of that level or any level above it, then groups them
+ * by precedence into the same tokens the cascade would produce. Each level with an operator becomes a single token containing its
+ * operands and operators in order, the same list a right-recursive rule collapses into.
+ * To the rest of the Parser, the rule has a single pattern of just the operand, since every level starts with one.
+ */
+class PrecedenceRule extends ParserRule {
+
+	/**
+	 * The name of the token of each level, from the lowest precedence to the highest.
+	 */
+	final String[] levels;
+	
+	/**
+	 * The level of each operator, which must all be lexer tokens.
+	 */
+	final HashMap<String, Integer> operators;
+	
+	final String operand;
+	
+	/**
+	 * The level this rule parses, operators of any lower level end it.
+	 */
+	final int level;
+	
+	
+	private PrecedenceRule(String operand, String[] levels, HashMap<String, Integer> operators, int level) throws ParserException {
+		
+		super(operand);
+		this.operand = operand;
+		this.levels = levels;
+		this.operators = operators;
+		this.level = level;
+	}
+	
+	/**
+	 * Constructs the rules for each level of a table of binary operators.
+	 * @param operand The token parsed between each operator.
+	 * @param levels The levels from the lowest precedence to the highest, each as the name of its token followed by its operators.
+	 * @return The rule for each level, in the same order.
+	 * @throws ParserException If a level is of an invalid format.
+	 */
+	static ArrayList<PrecedenceRule> create(String operand, String... levels) throws ParserException {
+		
+		String[] names = new String[levels.length];
+		HashMap<String, Integer> operators = new HashMap<>();
+		for(int i = 0; i < levels.length; ++i) {
+			
+			String[] tokens = levels[i].trim().split("[\t\r\n ]+");
+			if(tokens.length < 2)
+				throw new ParserException("Invalid precedence level: Levels must have a name and at least one operator");
+			
+			names[i] = tokens[0];
+			for(int j = 1; j < tokens.length; ++j)
+				if(operators.put(tokens[j], i) != null)
+					throw new ParserException("Invalid precedence level: Operator " + tokens[j] + " belongs to more than one level");
+		}
+		
+		ArrayList<PrecedenceRule> rules = new ArrayList<>();
+		for(int i = 0; i < names.length; ++i)
+			rules.add(new PrecedenceRule(operand.trim(), names, operators, i));
+		
+		return rules;
+	}
+}
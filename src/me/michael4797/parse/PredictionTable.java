@@ -0,0 +1,185 @@
+package me.michael4797.parse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A table of which TokenPatterns of each ParserRule can match, given the next LexerToken of the input.
+ * The Parser tries the patterns of a rule in order and takes the first that matches, so a pattern
+ * that can't start with the next token and can't match an empty string is certain to fail. Those patterns
+ * are skipped, and a rule with none left fails without trying anything. For most rules this leaves a single
+ * pattern, which is parsed without backtracking, while rules that are ambiguous on one token of lookahead
+ * are left to backtrack as before.
+ * Since a pattern that can match an empty string always matches, no matter what comes after it, only the FIRST
+ * set of each pattern is needed, not the FOLLOW set of the rule.
+ */
+class PredictionTable {
+
+	/**
+	 * The prediction for each rule, by the order the rules are defined in.
+	 */
+	private final Prediction[] predictions;
+	
+	/**
+	 * Whether each rule can match an empty string, by id.
+	 */
+	private final boolean[] nullable;
+	
+	/**
+	 * Builds the table for the specified rules. The rules must not change once the table is built.
+	 * @param rules The ParserRules, by the name of the token they parse.
+	 * @param grammar The compiled form of the rules, which gives the id of each token.
+	 */
+	PredictionTable(LinkedHashMap<String, ParserRule> rules, CompiledGrammar grammar) {
+		
+		HashMap<String, HashSet<String>> first = new HashMap<>();
+		HashSet<String> nullable = new HashSet<>();
+		for(String rule: rules.keySet())
+			first.put(rule, new HashSet<>());
+		
+		//Grow the FIRST sets until none of them change
+		boolean changed = true;
+		while(changed) {
+			
+			changed = false;
+			for(Map.Entry<String, ParserRule> rule: rules.entrySet()) {
+				
+				HashSet<String> tokens = first.get(rule.getKey());
+				for(TokenPattern pattern: rule.getValue()) {
+					
+					int size = tokens.size();
+					if(addFirst(pattern, first, nullable, tokens) && nullable.add(rule.getKey()))
+						changed = true;
+					
+					if(tokens.size() != size)
+						changed = true;
+				}
+			}
+		}
+		
+		predictions = new Prediction[rules.size()];
+		this.nullable = new boolean[rules.size()];
+		int id = 0;
+		for(Map.Entry<String, ParserRule> rule: rules.entrySet()) {
+			
+			this.nullable[id] = nullable.contains(rule.getKey());
+			predictions[id++] = new Prediction(rule.getValue(), first, nullable, grammar);
+		}
+	}
+	
+	/**
+	 * Finds the patterns of a rule that could match, given the next token.
+	 * @param rule The id of the rule being parsed, the index of the rule in the order they are defined.
+	 * @param next The next token of the input, whose id must be known, or null if there are none left.
+	 * @return The indices of the patterns to try, in order.
+	 */
+	int[] predict(int rule, LexerToken next) {
+		
+		Prediction prediction = predictions[rule];
+		if(next == null)
+			return prediction.empty;
+		
+		int[] patterns = prediction.patterns[next.id];
+		return patterns == null ? prediction.empty : patterns;
+	}
+	
+	/**
+	 * Checks if a rule can match an empty string. Such a rule never fails, since the patterns that can match an empty
+	 * string are tried whatever the next token is, and one of them always matches.
+	 * @param id The id of the rule or token.
+	 * @return True if the id is a rule that can match an empty string.
+	 */
+	boolean isNullable(int id) {
+		
+		return id >= 0 && id < nullable.length && nullable[id];
+	}
+	
+	/**
+	 * Adds the tokens a pattern can start with to a FIRST set.
+	 * @param pattern The pattern.
+	 * @param first The FIRST set of each rule found so far.
+	 * @param nullable The rules found so far that can match an empty string.
+	 * @param tokens The FIRST set to add to.
+	 * @return True if the pattern can match an empty string.
+	 */
+	private static boolean addFirst(TokenPattern pattern, HashMap<String, HashSet<String>> first, HashSet<String> nullable, HashSet<String> tokens) {
+		
+		for(String token: pattern) {
+			
+			//Lambda matches nothing, and is the only token of its pattern
+			if(token.isEmpty())
+				return true;
+			
+			HashSet<String> ruleFirst = first.get(token);
+			if(ruleFirst == null) {
+				
+				tokens.add(token);
+				return false;
+			}
+			
+			tokens.addAll(ruleFirst);
+			if(!nullable.contains(token))
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Helper class containing the patterns of a single rule to try for each token.
+	 */
+	private static class Prediction {
+		
+		/**
+		 * The patterns to try for each token, by id, or null if only the patterns that can match an empty string should be.
+		 */
+		private final int[][] patterns;
+		
+		/**
+		 * The patterns that can match an empty string, which are tried whatever the next token is.
+		 */
+		private final int[] empty;
+		
+		
+		private Prediction(ParserRule rule, HashMap<String, HashSet<String>> first, HashSet<String> nullable, CompiledGrammar grammar) {
+			
+			patterns = new int[grammar.unknown + 1][];
+			ArrayList<HashSet<String>> starts = new ArrayList<>();
+			ArrayList<Integer> empty = new ArrayList<>();
+			HashSet<String> tokens = new HashSet<>();
+			for(int i = 0; i < rule.patterns.size(); ++i) {
+				
+				HashSet<String> start = new HashSet<>();
+				if(addFirst(rule.patterns.get(i), first, nullable, start))
+					empty.add(i);
+				
+				starts.add(start);
+				tokens.addAll(start);
+			}
+			
+			this.empty = toArray(empty);
+			for(String token: tokens) {
+				
+				ArrayList<Integer> matching = new ArrayList<>();
+				for(int i = 0; i < starts.size(); ++i)
+					if(starts.get(i).contains(token) || empty.contains(i))
+						matching.add(i);
+				
+				patterns[grammar.getId(token)] = toArray(matching);
+			}
+		}
+		
+		
+		private static int[] toArray(ArrayList<Integer> list) {
+			
+			int[] array = new int[list.size()];
+			for(int i = 0; i < array.length; ++i)
+				array[i] = list.get(i);
+			
+			return array;
+		}
+	}
+}
@@ -27,4 +27,13 @@ public class StringStream extends InputStream{
 		
 		return -1;
 	}
+	
+	/**
+	 * Retrieves the data that has not been read yet, without advancing this stream.
+	 * @return The unread data.
+	 */
+	CharSequence unread() {
+		
+		return data.substring(index);
+	}
 }
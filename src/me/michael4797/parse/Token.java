@@ -10,7 +10,13 @@ import java.util.Iterator;
 public class Token implements Iterable<LexerToken>{
 
 	public final String name;
-	public final String value;
+	private final String value;
+	
+	/**
+	 * The id of this token's name in the compiled form of the Grammar, or -1 if it isn't known yet.
+	 * The Parser compares ids instead of names.
+	 */
+	int id = -1;
 	
 	/**
 	 * Constructs a token to be used by a Lexer or a Parser
@@ -23,6 +29,24 @@ public class Token implements Iterable<LexerToken>{
 		this.value = value;
 	}
 
+	
+	/**
+	 * Gets the textual representation of this token.
+	 * @return The text of this token, or an empty String if this token is a branch.
+	 */
+	public String getValue() {
+		
+		return value;
+	}
+	
+	/**
+	 * Gets the textual representation of this token in lowercase.
+	 * @return The text of this token in lowercase.
+	 */
+	public String getLowerCaseValue() {
+		
+		return getValue().toLowerCase();
+	}
 
 	/**
 	 * Gets the number of children.
@@ -69,7 +93,7 @@ public class Token implements Iterable<LexerToken>{
 	@Override
 	public String toString() {
 		
-		return name + ": " + value;
+		return name + ": " + getValue();
 	}
 
 
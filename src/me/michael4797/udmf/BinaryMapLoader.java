@@ -0,0 +1,277 @@
+package me.michael4797.udmf;
+
+import java.nio.ByteBuffer;
+
+import me.michael4797.wad.ByteReader;
+import me.michael4797.wad.WadMap;
+
+/**
+ * Loads maps stored in the binary Doom or Hexen formats, decoding their fixed-size records directly into
+ * the same blocks a TEXTMAP lump would define, so the rest of the program can't tell the difference.
+ */
+class BinaryMapLoader {
+
+	private static final int VERTEX_SIZE = 4;
+	private static final int SIDEDEF_SIZE = 30;
+	private static final int SECTOR_SIZE = 26;
+	private static final int DOOM_LINEDEF_SIZE = 14;
+	private static final int HEXEN_LINEDEF_SIZE = 16;
+	private static final int DOOM_THING_SIZE = 10;
+	private static final int HEXEN_THING_SIZE = 20;
+	
+	/**
+	 * The linedef special used to define 3D floors, which has the same number in both formats.
+	 */
+	private static final int SECTOR_SET_3D_FLOOR = 160;
+	
+	/**
+	 * The Hexen linedef special used to give a line an ID.
+	 */
+	private static final int LINE_SET_IDENTIFICATION = 121;
+	
+	/**
+	 * The UDMF activation flags, indexed by the activation type stored in bits 10 to 12 of a Hexen linedef's flags.
+	 */
+	private static final String[] activations = {"playercross", "playeruse", "monstercross", "impact", "playerpush", "missilecross", "playeruse", "playercross"};
+	
+	
+	private BinaryMapLoader() {}
+	
+	/**
+	 * Loads the blocks of the specified binary map into the specified UDMF map.
+	 * The map is in the Hexen format if it has a BEHAVIOR lump, otherwise it is in the Doom format.
+	 * @param map The map to add the blocks to.
+	 * @param lumps The lumps making up the binary map.
+	 */
+	static void load(UniversalDoomMap map, WadMap lumps) {
+		
+		boolean hexen = lumps.contains("BEHAVIOR");
+		map.setNamespace(hexen ? "hexen" : "doom");
+		
+		ByteReader vertices = open(lumps, "VERTEXES", VERTEX_SIZE);
+		while(vertices.hasMoreData())
+			map.addBlock(readVertex(vertices));
+		
+		ByteReader sectors = open(lumps, "SECTORS", SECTOR_SIZE);
+		while(sectors.hasMoreData())
+			map.addBlock(readSector(sectors));
+		
+		ByteReader sides = open(lumps, "SIDEDEFS", SIDEDEF_SIZE);
+		while(sides.hasMoreData())
+			map.addBlock(readSideDef(sides));
+		
+		ByteReader lines = open(lumps, "LINEDEFS", hexen ? HEXEN_LINEDEF_SIZE : DOOM_LINEDEF_SIZE);
+		while(lines.hasMoreData())
+			map.addBlock(hexen ? readHexenLineDef(lines) : readDoomLineDef(lines));
+		
+		ByteReader things = open(lumps, "THINGS", hexen ? HEXEN_THING_SIZE : DOOM_THING_SIZE);
+		while(things.hasMoreData())
+			map.addBlock(hexen ? readHexenThing(things) : readDoomThing(things));
+	}
+	
+	/**
+	 * Retrieves a lump of the map and checks that it is made up of whole records.
+	 * @param lumps The lumps making up the binary map.
+	 * @param name The name of the lump.
+	 * @param recordSize The size of a single record in the lump, in bytes.
+	 * @return A reader over the lump's records.
+	 */
+	private static ByteReader open(WadMap lumps, String name, int recordSize) {
+		
+		ByteBuffer data = lumps.getLump(name);
+		if(data == null)
+			throw new IllegalArgumentException("The specified map does not contain a " + name + " lump");
+		
+		if(data.remaining() % recordSize != 0)
+			throw new IllegalArgumentException("The " + name + " lump is not a multiple of " + recordSize + " bytes");
+		
+		return new ByteReader(data);
+	}
+	
+	/**
+	 * Reads an unsigned index, where 0xFFFF means no index.
+	 * @param in The reader to read from.
+	 * @return The index, or -1 if there is none.
+	 */
+	private static int readIndex(ByteReader in) {
+		
+		int index = in.readShort() & 65535;
+		return index == 65535 ? -1 : index;
+	}
+	
+	
+	private static Block readVertex(ByteReader in) {
+		
+		Block block = new VertexBlock();
+		block.putValue("x", new FloatValue(in.readShort()));
+		block.putValue("y", new FloatValue(in.readShort()));
+		return block;
+	}
+	
+	
+	private static Block readSector(ByteReader in) {
+		
+		Block block = new SectorBlock();
+		block.putValue("heightfloor", new IntegerValue(in.readShort()));
+		block.putValue("heightceiling", new IntegerValue(in.readShort()));
+		block.putValue("texturefloor", new StringValue(in.readString(8)));
+		block.putValue("textureceiling", new StringValue(in.readString(8)));
+		block.putValue("lightlevel", new IntegerValue(in.readShort()));
+		block.putValue("special", new IntegerValue(in.readShort() & 65535));
+		block.putValue("id", new IntegerValue(in.readShort() & 65535));
+		return block;
+	}
+	
+	
+	private static Block readSideDef(ByteReader in) {
+		
+		Block block = new SideDefBlock();
+		block.putValue("offsetx", new IntegerValue(in.readShort()));
+		block.putValue("offsety", new IntegerValue(in.readShort()));
+		block.putValue("texturetop", new StringValue(in.readString(8)));
+		block.putValue("texturebottom", new StringValue(in.readString(8)));
+		block.putValue("texturemiddle", new StringValue(in.readString(8)));
+		block.putValue("sector", new IntegerValue(in.readShort() & 65535));
+		return block;
+	}
+	
+	/**
+	 * Sets the flags shared by the Doom and Hexen linedef formats.
+	 * @param block The linedef to set the flags of.
+	 * @param flags The linedef's flags.
+	 */
+	private static void putLineFlags(Block block, int flags) {
+		
+		block.putValue("blocking", new BooleanValue((flags & 0x0001) != 0));
+		block.putValue("blockmonsters", new BooleanValue((flags & 0x0002) != 0));
+		block.putValue("twosided", new BooleanValue((flags & 0x0004) != 0));
+		block.putValue("dontpegtop", new BooleanValue((flags & 0x0008) != 0));
+		block.putValue("dontpegbottom", new BooleanValue((flags & 0x0010) != 0));
+		block.putValue("secret", new BooleanValue((flags & 0x0020) != 0));
+		block.putValue("blocksound", new BooleanValue((flags & 0x0040) != 0));
+		block.putValue("dontdraw", new BooleanValue((flags & 0x0080) != 0));
+		block.putValue("mapped", new BooleanValue((flags & 0x0100) != 0));
+	}
+	
+	
+	private static Block readDoomLineDef(ByteReader in) {
+		
+		Block block = new LineDefBlock();
+		block.putValue("v1", new IntegerValue(in.readShort() & 65535));
+		block.putValue("v2", new IntegerValue(in.readShort() & 65535));
+		
+		int flags = in.readShort() & 65535;
+		putLineFlags(block, flags);
+		block.putValue("passuse", new BooleanValue((flags & 0x0200) != 0));
+		
+		int type = in.readShort() & 65535;
+		int tag = in.readShort() & 65535;
+		
+		//Only the 3D floor special matters to us, so that's the only Doom line type that gets translated
+		if(type == SECTOR_SET_3D_FLOOR) {
+			
+			block.putValue("special", new IntegerValue(SECTOR_SET_3D_FLOOR));
+			block.putValue("arg0", new IntegerValue(tag));
+			block.putValue("arg1", new IntegerValue(1));
+			block.putValue("arg3", new IntegerValue(255));
+		}
+		
+		block.putValue("sidefront", new IntegerValue(readIndex(in)));
+		block.putValue("sideback", new IntegerValue(readIndex(in)));
+		return block;
+	}
+	
+	
+	private static Block readHexenLineDef(ByteReader in) {
+		
+		Block block = new LineDefBlock();
+		block.putValue("v1", new IntegerValue(in.readShort() & 65535));
+		block.putValue("v2", new IntegerValue(in.readShort() & 65535));
+		
+		int flags = in.readShort() & 65535;
+		putLineFlags(block, flags);
+		block.putValue("repeatspecial", new BooleanValue((flags & 0x0200) != 0));
+		block.putValue(activations[(flags >> 10) & 7], new BooleanValue(true));
+		block.putValue("monsteruse", new BooleanValue((flags & 0x2000) != 0));
+		block.putValue("blockplayers", new BooleanValue((flags & 0x4000) != 0));
+		block.putValue("blockeverything", new BooleanValue((flags & 0x8000) != 0));
+		
+		//Activation type 6 is a use activation that passes through to the lines behind it
+		block.putValue("passuse", new BooleanValue(((flags >> 10) & 7) == 6));
+		
+		int special = in.readByte() & 255;
+		block.putValue("special", new IntegerValue(special));
+		int id = in.readByte() & 255;
+		block.putValue("arg0", new IntegerValue(id));
+		for(int i = 1; i < 5; ++i)
+			block.putValue("arg" + i, new IntegerValue(in.readByte() & 255));
+		
+		if(special == LINE_SET_IDENTIFICATION)
+			block.putValue("id", new IntegerValue(id));
+		
+		block.putValue("sidefront", new IntegerValue(readIndex(in)));
+		block.putValue("sideback", new IntegerValue(readIndex(in)));
+		return block;
+	}
+	
+	
+	private static Block readDoomThing(ByteReader in) {
+		
+		Block block = new ThingBlock();
+		block.putValue("x", new FloatValue(in.readShort()));
+		block.putValue("y", new FloatValue(in.readShort()));
+		block.putValue("angle", new IntegerValue(in.readShort()));
+		block.putValue("type", new IntegerValue(in.readShort() & 65535));
+		
+		int flags = in.readShort() & 65535;
+		putSkillFlags(block, flags);
+		block.putValue("single", new BooleanValue((flags & 0x0010) == 0));
+		block.putValue("dm", new BooleanValue((flags & 0x0020) == 0));
+		block.putValue("coop", new BooleanValue((flags & 0x0040) == 0));
+		block.putValue("friend", new BooleanValue((flags & 0x0080) != 0));
+		return block;
+	}
+	
+	
+	private static Block readHexenThing(ByteReader in) {
+		
+		Block block = new ThingBlock();
+		block.putValue("id", new IntegerValue(in.readShort() & 65535));
+		block.putValue("x", new FloatValue(in.readShort()));
+		block.putValue("y", new FloatValue(in.readShort()));
+		block.putValue("height", new FloatValue(in.readShort()));
+		block.putValue("angle", new IntegerValue(in.readShort()));
+		block.putValue("type", new IntegerValue(in.readShort() & 65535));
+		
+		int flags = in.readShort() & 65535;
+		putSkillFlags(block, flags);
+		block.putValue("dormant", new BooleanValue((flags & 0x0010) != 0));
+		block.putValue("class1", new BooleanValue((flags & 0x0020) != 0));
+		block.putValue("class2", new BooleanValue((flags & 0x0040) != 0));
+		block.putValue("class3", new BooleanValue((flags & 0x0080) != 0));
+		block.putValue("single", new BooleanValue((flags & 0x0100) != 0));
+		block.putValue("coop", new BooleanValue((flags & 0x0200) != 0));
+		block.putValue("dm", new BooleanValue((flags & 0x0400) != 0));
+		
+		block.putValue("special", new IntegerValue(in.readByte() & 255));
+		for(int i = 0; i < 5; ++i)
+			block.putValue("arg" + i, new IntegerValue(in.readByte() & 255));
+		
+		return block;
+	}
+	
+	/**
+	 * Sets the skill and ambush flags shared by the Doom and Hexen thing formats.
+	 * @param block The thing to set the flags of.
+	 * @param flags The thing's flags.
+	 */
+	private static void putSkillFlags(Block block, int flags) {
+		
+		block.putValue("skill1", new BooleanValue((flags & 0x0001) != 0));
+		block.putValue("skill2", new BooleanValue((flags & 0x0001) != 0));
+		block.putValue("skill3", new BooleanValue((flags & 0x0002) != 0));
+		block.putValue("skill4", new BooleanValue((flags & 0x0004) != 0));
+		block.putValue("skill5", new BooleanValue((flags & 0x0004) != 0));
+		block.putValue("ambush", new BooleanValue((flags & 0x0008) != 0));
+	}
+}
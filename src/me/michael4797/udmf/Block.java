@@ -1,6 +1,8 @@
 package me.michael4797.udmf;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Set;
 
 /**
  * Contains a mapping of properties for a block type in a TEXTMAP lump.
@@ -19,6 +21,28 @@ public class Block {
 		this.blockType = type.toLowerCase();
 	}
 	
+	/**
+	 * Creates a Block of the specified type, with the default properties for that type.
+	 * @param type The type of the block.
+	 * @return The newly created Block.
+	 */
+	public static Block create(String type) {
+		
+		//The known block types get subclasses that fill in their default values
+		if(type.equalsIgnoreCase("thing"))
+			return new ThingBlock();
+		else if(type.equalsIgnoreCase("vertex"))
+			return new VertexBlock();
+		else if(type.equalsIgnoreCase("linedef"))
+			return new LineDefBlock();
+		else if(type.equalsIgnoreCase("sidedef"))
+			return new SideDefBlock();
+		else if(type.equalsIgnoreCase("sector"))
+			return new SectorBlock();
+		else
+			return new Block(type);
+	}
+	
 	/**
 	 * Used to set a property in this block as a key-value pair.
 	 * @param name The name of the property.
@@ -29,6 +53,25 @@ public class Block {
 		values.put(name.toLowerCase(), value);
 	}
 	
+	/**
+	 * Retrieves the names of every property in this block, including default properties.
+	 * @return An unmodifiable view of the property names.
+	 */
+	public Set<String> getKeys() {
+		
+		return Collections.unmodifiableSet(values.keySet());
+	}
+	
+	/**
+	 * Retrieves the specified property without interpreting it.
+	 * @param name The name of the property to read.
+	 * @return The value of the property, or null if there is no such property.
+	 */
+	Value getValue(String name) {
+		
+		return values.get(name.toLowerCase());
+	}
+	
 	/**
 	 * Retrieves the specified property and interprets it as a boolean.
 	 * Throws an Exception if the specified property is not a boolean type.
@@ -39,7 +39,7 @@ public class BlockVisitor implements TokenVisitor<Void>{
 	
 	public Void visitAssignment(Token token) {
 		
-		String identifier = token.getChild(0).value; //The name of the property being defined
+		String identifier = token.getChild(0).getLowerCaseValue(); //The name of the property being defined
 		Value value = token.getChild(2).accept(visitor); //The value of the property
 		
 		block.putValue(identifier, value); //Load the property
@@ -0,0 +1,73 @@
+package me.michael4797.udmf;
+
+import me.michael4797.parse.LexerToken;
+import me.michael4797.parse.ParserListener;
+
+/**
+ * Listens to the expressions of the TEXTMAP lump as they're parsed, initializing the namespace and blocks for a UDMF map.
+ * Each block is added to the map as soon as its closing bracket is parsed, so the Parser never holds more than one.
+ */
+class ExpressionListener implements ParserListener {
+
+	private final UniversalDoomMap map;
+	private Block block;
+	private LexerToken identifier;
+	private Value value;
+	
+	
+	ExpressionListener(UniversalDoomMap map) {
+		
+		this.map = map;
+	}
+	
+	
+	@Override
+	public void enterRule(String rule) {}
+	
+	
+	@Override
+	public void token(LexerToken token) {
+		
+		switch(token.name) {
+		case "Identifier":
+			identifier = token;
+			break;
+		case "OpenBracket":
+			//We found a block, the identifier before it is its type
+			block = Block.create(identifier.getLowerCaseValue());
+			break;
+		case "Equals":
+		case "Semicolon":
+		case "CloseBracket":
+			break;
+		default:
+			value = token.accept(BlockVisitor.visitor); //The value of the assignment
+		}
+	}
+	
+	
+	@Override
+	public void exitRule(String rule) {
+		
+		if(rule.equals("Assignment")) {
+			
+			if(block != null) {
+				
+				block.putValue(identifier.getLowerCaseValue(), value); //Load the property
+			}
+			else {
+				
+				//If the identifier being assigned is 'namespace' then set the namespace of our UDMF map
+				if(!identifier.getValue().equalsIgnoreCase("namespace"))
+					throw new RuntimeException("Unexpected assignment expression found " + identifier.getValue());
+				
+				map.setNamespace(value.asString());
+			}
+		}
+		else if(rule.equals("Block")) {
+			
+			map.addBlock(block);
+			block = null;
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package me.michael4797.udmf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes snapshots of the blocks of a UniversalDoomMap, so that a map only has to be parsed once.
+ * A snapshot is a little-endian file made up of a header with the map's namespace, code and name, followed by
+ * each type of block stored as a set of typed columns, one per property. Each column has a bitmap of which blocks
+ * have the property, followed by the values of those blocks, with Strings stored as indices into a table
+ * of the column's distinct values. Snapshots are read straight from a memory-mapped file.
+ */
+public class MapSnapshot {
+
+	/**
+	 * Identifies a snapshot file, the bytes "UDMS" read as a little-endian int.
+	 */
+	private static final int MAGIC = 0x534D4455;
+	
+	/**
+	 * The version of the snapshot format, snapshots with a different version can't be read.
+	 */
+	public static final int VERSION = 1;
+	
+	private static final byte BOOLEAN = 0;
+	private static final byte INTEGER = 1;
+	private static final byte FLOAT = 2;
+	private static final byte STRING = 3;
+	
+	
+	private MapSnapshot() {}
+	
+	/**
+	 * Writes a snapshot of the specified map to a file, replacing the file if it exists.
+	 * The snapshot is written to a temporary file first, so a partially written snapshot is never read.
+	 * @param map The map to be written.
+	 * @param file The file to write to.
+	 * @throws IOException If there was an error writing the file.
+	 */
+	public static void write(UniversalDoomMap map, Path file) throws IOException {
+		
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			
+			try(OutputStream out = Files.newOutputStream(temp)) {
+				
+				write(map, out);
+			}
+			
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	/**
+	 * Writes a snapshot of the specified map to a stream.
+	 * @param map The map to be written.
+	 * @param out The stream to write to.
+	 * @throws IOException If there was an error writing to the stream.
+	 */
+	public static void write(UniversalDoomMap map, OutputStream out) throws IOException {
+		
+		SnapshotWriter writer = new SnapshotWriter();
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeString(map.getNamespace());
+		writer.writeString(map.mapCode);
+		writer.writeString(map.mapName);
+		
+		//Sorted so the same map always produces the same snapshot
+		ArrayList<String> types = new ArrayList<>(map.getBlockTypes());
+		types.sort(null);
+		writer.writeInt(types.size());
+		for(String type: types) {
+			
+			ArrayList<Block> blocks = map.getBlocks(type);
+			writer.writeString(type);
+			writer.writeInt(blocks.size());
+			
+			//Gather the columns, properties with the same name but different types get separate columns
+			TreeMap<String, Column> columns = new TreeMap<>();
+			for(int i = 0; i < blocks.size(); ++i) {
+				
+				Block block = blocks.get(i);
+				for(String key: block.getKeys()) {
+					
+					Value value = block.getValue(key);
+					byte valueType = getType(value);
+					Column column = columns.get(key + '\0' + valueType);
+					if(column == null) {
+						
+						column = new Column(key, valueType, blocks.size());
+						columns.put(key + '\0' + valueType, column);
+					}
+					
+					column.add(i, value);
+				}
+			}
+			
+			writer.writeInt(columns.size());
+			for(Column column: columns.values())
+				column.write(writer);
+		}
+		
+		writer.writeTo(out);
+	}
+	
+	/**
+	 * Determines how a value is stored in a snapshot.
+	 * @param value The value.
+	 * @return The type of the column the value is stored in.
+	 */
+	private static byte getType(Value value) {
+		
+		if(value instanceof BooleanValue)
+			return BOOLEAN;
+		else if(value instanceof IntegerValue)
+			return INTEGER;
+		else if(value instanceof FloatValue)
+			return FLOAT;
+		else if(value instanceof StringValue)
+			return STRING;
+		
+		throw new IllegalArgumentException("Unsupported value type " + value.getClass().getSimpleName());
+	}
+	
+	/**
+	 * Reads a snapshot from a file, which is memory-mapped rather than read into memory.
+	 * @param file The file to read from.
+	 * @return The map stored in the snapshot.
+	 * @throws IOException If there was an error reading the file, or it is not a valid snapshot.
+	 */
+	public static UniversalDoomMap read(Path file) throws IOException {
+		
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	/**
+	 * Reads a snapshot from the specified buffer, starting at its current position.
+	 * The specified buffer is not modified.
+	 * @param buffer The buffer containing the snapshot.
+	 * @return The map stored in the snapshot.
+	 * @throws IOException If the buffer does not contain a valid snapshot.
+	 */
+	public static UniversalDoomMap read(ByteBuffer buffer) throws IOException {
+		
+		ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			
+			if(data.getInt() != MAGIC)
+				throw new IOException("Not a map snapshot");
+			
+			int version = data.getInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported snapshot version " + version);
+			
+			UniversalDoomMap map = new UniversalDoomMap(readString(data), readString(data), readString(data));
+			int typeCount = readCount(data, data.remaining());
+			for(int i = 0; i < typeCount; ++i) {
+				
+				String type = readString(data);
+				if(type == null)
+					throw new IOException("Corrupt map snapshot");
+				
+				//Every column has a bit for each block
+				Block[] blocks = new Block[readCount(data, data.remaining() * 8L)];
+				for(int j = 0; j < blocks.length; ++j)
+					blocks[j] = Block.create(type);
+				
+				int columnCount = readCount(data, data.remaining());
+				for(int j = 0; j < columnCount; ++j)
+					readColumn(data, blocks);
+				
+				for(Block block: blocks)
+					map.addBlock(block);
+			}
+			
+			return map;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			
+			throw new IOException("Truncated or corrupt map snapshot", e);
+		}
+	}
+	
+	/**
+	 * Reads a single column and sets its values in the blocks that have it.
+	 * @param data The snapshot, positioned at the start of the column.
+	 * @param blocks The blocks the column belongs to.
+	 * @throws IOException If the column is not valid.
+	 */
+	private static void readColumn(ByteBuffer data, Block[] blocks) throws IOException {
+		
+		String key = readString(data);
+		byte type = data.get();
+		byte[] present = new byte[(blocks.length + 7) >> 3];
+		data.get(present);
+		
+		switch(type) {
+		case BOOLEAN:
+			byte[] bits = new byte[present.length];
+			data.get(bits);
+			for(int i = 0; i < blocks.length; ++i)
+				if(isSet(present, i))
+					blocks[i].putValue(key, new BooleanValue(isSet(bits, i)));
+			break;
+		case INTEGER:
+			for(int i = 0; i < blocks.length; ++i)
+				if(isSet(present, i))
+					blocks[i].putValue(key, new IntegerValue(data.getInt()));
+			break;
+		case FLOAT:
+			for(int i = 0; i < blocks.length; ++i)
+				if(isSet(present, i))
+					blocks[i].putValue(key, new FloatValue(data.getDouble()));
+			break;
+		case STRING:
+			//Values are immutable, so every block with the same String shares the same value
+			StringValue[] table = new StringValue[readCount(data, data.remaining())];
+			for(int i = 0; i < table.length; ++i)
+				table[i] = new StringValue(readString(data));
+			
+			for(int i = 0; i < blocks.length; ++i) {
+				
+				if(isSet(present, i)) {
+					
+					int index = data.getInt();
+					if(index < 0 || index >= table.length)
+						throw new IOException("Corrupt map snapshot");
+					
+					blocks[i].putValue(key, table[index]);
+				}
+			}
+			break;
+		default:
+			throw new IOException("Unknown column type " + type);
+		}
+	}
+	
+	
+	private static boolean isSet(byte[] bitmap, int index) {
+		
+		return (bitmap[index >> 3] & (1 << (index & 7))) != 0;
+	}
+	
+	/**
+	 * Reads a count, which must not be negative. Counts are checked against what's left of the snapshot
+	 * before anything is allocated for them, so a corrupt count can't allocate more than the snapshot could hold.
+	 * @param data The snapshot to read from.
+	 * @param limit The largest count the rest of the snapshot could hold.
+	 * @return The count.
+	 * @throws IOException If the count is negative or larger than the limit.
+	 */
+	private static int readCount(ByteBuffer data, long limit) throws IOException {
+		
+		int count = data.getInt();
+		if(count < 0 || count > limit)
+			throw new IOException("Corrupt map snapshot");
+		
+		return count;
+	}
+	
+	/**
+	 * Reads a length-prefixed UTF-8 String, where a length of -1 is a null String.
+	 * @param data The snapshot to read from.
+	 * @return The String.
+	 * @throws IOException If the length is not valid.
+	 */
+	private static String readString(ByteBuffer data) throws IOException {
+		
+		int length = data.getInt();
+		if(length == -1)
+			return null;
+		
+		if(length < 0 || length > data.remaining())
+			throw new IOException("Corrupt map snapshot");
+		
+		byte[] bytes = new byte[length];
+		data.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * The values of a single property of every block of one type, collected while writing a snapshot.
+	 */
+	private static class Column {
+		
+		private final String key;
+		private final byte type;
+		private final byte[] present;
+		private final byte[] bits;
+		private final ArrayList<Value> values = new ArrayList<>();
+		
+		
+		private Column(String key, byte type, int blockCount) {
+			
+			this.key = key;
+			this.type = type;
+			present = new byte[(blockCount + 7) >> 3];
+			bits = new byte[present.length];
+		}
+		
+		
+		private void add(int index, Value value) {
+			
+			present[index >> 3] |= 1 << (index & 7);
+			if(type == BOOLEAN) {
+				
+				if(value.asBoolean())
+					bits[index >> 3] |= 1 << (index & 7);
+			}
+			else {
+				
+				values.add(value);
+			}
+		}
+		
+		
+		private void write(SnapshotWriter writer) {
+			
+			writer.writeString(key);
+			writer.writeByte(type);
+			writer.writeBytes(present);
+			
+			switch(type) {
+			case BOOLEAN:
+				writer.writeBytes(bits);
+				break;
+			case INTEGER:
+				for(Value value: values)
+					writer.writeInt(value.asInteger());
+				break;
+			case FLOAT:
+				for(Value value: values)
+					writer.writeDouble(value.asFloat());
+				break;
+			case STRING:
+				//Most Strings are texture names, which repeat a lot, so each one is only written once
+				LinkedHashMap<String, Integer> table = new LinkedHashMap<>();
+				for(Value value: values)
+					table.putIfAbsent(value.asString(), table.size());
+				
+				writer.writeInt(table.size());
+				for(String string: table.keySet())
+					writer.writeString(string);
+				
+				for(Value value: values)
+					writer.writeInt(table.get(value.asString()));
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Collects the little-endian encoding of a snapshot in memory.
+	 */
+	private static class SnapshotWriter {
+		
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		private final HashMap<String, byte[]> encoded = new HashMap<>();
+		
+		
+		private void writeByte(byte value) {
+			
+			out.write(value);
+		}
+		
+		
+		private void writeBytes(byte[] bytes) {
+			
+			out.write(bytes, 0, bytes.length);
+		}
+		
+		
+		private void writeInt(int value) {
+			
+			scratch.clear();
+			out.write(scratch.putInt(value).array(), 0, 4);
+		}
+		
+		
+		private void writeDouble(double value) {
+			
+			scratch.clear();
+			out.write(scratch.putDouble(value).array(), 0, 8);
+		}
+		
+		
+		private void writeString(String string) {
+			
+			if(string == null) {
+				
+				writeInt(-1);
+				return;
+			}
+			
+			byte[] bytes = encoded.computeIfAbsent(string, (s) -> s.getBytes(StandardCharsets.UTF_8));
+			writeInt(bytes.length);
+			writeBytes(bytes);
+		}
+		
+		
+		private void writeTo(OutputStream stream) throws IOException {
+			
+			out.writeTo(stream);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package me.michael4797.udmf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An index of the structural characters in a TEXTMAP lump, the braces, equals signs and semicolons that
+ * separate its tokens, along with where each quoted string and comment starts and ends.
+ * Everything between two consecutive positions in the index is whitespace or a single word, such as an
+ * identifier or a number, so the lump can be tokenized by jumping from one position to the next.
+ * The lump is searched for structural characters 8 bytes at a time, with each byte of a 64-bit word
+ * compared at once, and only the few bytes that are found are looked at individually.
+ */
+class StructuralIndex {
+
+	/**
+	 * The position stored as the end of a quoted string or comment that is never closed.
+	 */
+	static final int UNTERMINATED = -1;
+	
+	private static final long ONES = 0x0101010101010101L;
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	
+	private static final long OPEN_BRACKET = ONES * '{';
+	private static final long CLOSE_BRACKET = ONES * '}';
+	private static final long EQUALS = ONES * '=';
+	private static final long SEMICOLON = ONES * ';';
+	private static final long QUOTE = ONES * '"';
+	private static final long SLASH = ONES * '/';
+	
+	private final ByteBuffer data;
+	private int[] positions = new int[1024];
+	private int size;
+	
+	
+	private StructuralIndex(ByteBuffer data) {
+		
+		this.data = data;
+	}
+	
+	/**
+	 * Builds the index of the bytes between the position and limit of the specified buffer.
+	 * The specified buffer is not modified, and positions in the index are relative to its position.
+	 * @param buffer The TEXTMAP lump.
+	 * @return The index.
+	 */
+	static StructuralIndex build(ByteBuffer buffer) {
+		
+		StructuralIndex index = new StructuralIndex(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+		index.build();
+		return index;
+	}
+	
+	/**
+	 * Gets the number of positions in the index.
+	 * @return The number of positions.
+	 */
+	int size() {
+		
+		return size;
+	}
+	
+	/**
+	 * Gets a position in the index. A quoted string or comment takes up two positions, the first and last
+	 * characters of it, where the last is UNTERMINATED if the lump ends first.
+	 * @param i The index of the position.
+	 * @return The position in the lump.
+	 */
+	int get(int i) {
+		
+		return positions[i];
+	}
+	
+	
+	private void build() {
+		
+		int length = data.limit();
+		int i = 0;
+		words: while(i + 8 <= length) {
+			
+			long mask = findStructural(data.getLong(i));
+			while(mask != 0) {
+				
+				int position = i + (Long.numberOfTrailingZeros(mask) >>> 3);
+				mask &= mask - 1;
+				
+				int next = add(position);
+				if(next != position + 1) {
+					
+					//We skipped over a string or comment, so start again after it
+					if(next == UNTERMINATED)
+						return;
+					
+					i = next;
+					continue words;
+				}
+			}
+			
+			i += 8;
+		}
+		
+		//Whatever is left is too short for a whole word
+		while(i < length) {
+			
+			byte c = data.get(i);
+			if(c == '{' || c == '}' || c == '=' || c == ';' || c == '"' || c == '/') {
+				
+				i = add(i);
+				if(i == UNTERMINATED)
+					return;
+			}
+			else {
+				
+				++i;
+			}
+		}
+	}
+	
+	/**
+	 * Finds the structural characters in 8 bytes of the lump.
+	 * @param word The bytes, with the first in the lowest 8 bits.
+	 * @return A mask with the high bit of each byte set if that byte is a structural character.
+	 */
+	private static long findStructural(long word) {
+		
+		return findByte(word, OPEN_BRACKET) | findByte(word, CLOSE_BRACKET) | findByte(word, EQUALS)
+				| findByte(word, SEMICOLON) | findByte(word, QUOTE) | findByte(word, SLASH);
+	}
+	
+	/**
+	 * Finds the bytes equal to a character, without the false positives of the usual 'has zero byte' trick.
+	 * @param word The bytes to search.
+	 * @param pattern The character repeated in each byte.
+	 * @return A mask with the high bit of each byte set if that byte is the character.
+	 */
+	private static long findByte(long word, long pattern) {
+		
+		long x = word ^ pattern;
+		return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+	}
+	
+	/**
+	 * Adds a structural character to the index.
+	 * @param position The position of the character.
+	 * @return The position to continue searching from, or UNTERMINATED if a string or comment runs to the end of the lump.
+	 */
+	private int add(int position) {
+		
+		byte c = data.get(position);
+		if(c == '"')
+			return addRange(position, findStringEnd(position + 1));
+		
+		if(c == '/') {
+			
+			//A slash that doesn't start a comment is part of a word, which won't be a valid token anyway
+			byte next = position + 1 < data.limit() ? data.get(position + 1) : 0;
+			if(next == '/')
+				return addRange(position, findLineEnd(position + 2));
+			else if(next == '*')
+				return addRange(position, findCommentEnd(position + 2));
+			
+			return position + 1;
+		}
+		
+		addPosition(position);
+		return position + 1;
+	}
+	
+	
+	private int addRange(int start, int end) {
+		
+		addPosition(start);
+		addPosition(end);
+		return end == UNTERMINATED ? UNTERMINATED : end + 1;
+	}
+	
+	
+	private void addPosition(int position) {
+		
+		if(size == positions.length)
+			positions = Arrays.copyOf(positions, size * 2);
+		
+		positions[size++] = position;
+	}
+	
+	
+	private int findStringEnd(int position) {
+		
+		int length = data.limit();
+		for(int i = position; i < length; ++i) {
+			
+			byte c = data.get(i);
+			if(c == '"')
+				return i;
+			
+			//An escaped line break isn't allowed in a string, so leave it for the Lexer to report
+			if(c == '\\' && ++i < length && isLineBreak(data.get(i)))
+				return UNTERMINATED;
+		}
+		
+		return UNTERMINATED;
+	}
+	
+	
+	private int findLineEnd(int position) {
+		
+		int length = data.limit();
+		for(int i = position; i < length; ++i)
+			if(data.get(i) == '\n')
+				return i;
+		
+		return UNTERMINATED;
+	}
+	
+	
+	private int findCommentEnd(int position) {
+		
+		int length = data.limit();
+		for(int i = position + 1; i < length; ++i)
+			if(data.get(i) == '/' && data.get(i - 1) == '*')
+				return i;
+		
+		return UNTERMINATED;
+	}
+	
+	
+	private static boolean isLineBreak(byte c) {
+		
+		return c == '\n' || c == '\r' || c == (byte) 0x85;
+	}
+}
@@ -0,0 +1,178 @@
+package me.michael4797.udmf;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import me.michael4797.parse.Grammar;
+import me.michael4797.parse.LexerToken;
+import me.michael4797.parse.ParserEndOfStreamException;
+import me.michael4797.parse.ParserException;
+import me.michael4797.parse.PipelinedTokenStream;
+import me.michael4797.parse.TokenStream;
+
+/**
+ * Reads the blocks of a TEXTMAP lump in a single pass, without building an AST.
+ * TEXTMAP is only a list of blocks and assignments, so rather than parsing it with the TEXTMAP Grammar,
+ * its tokens are read in order and each block is loaded as soon as it is closed. Like the Grammar, reading
+ * stops at the first expression that is malformed, keeping every block before it.
+ */
+class TextMapReader {
+
+	private final UniversalDoomMap map;
+	private final TokenStream in;
+	private final ValueVisitor values = new ValueVisitor();
+	
+	/**
+	 * Texture names and the like repeat a lot, and values are immutable, so each String is only loaded once.
+	 */
+	private final HashMap<String, Value> strings = new HashMap<>();
+	
+	
+	private TextMapReader(UniversalDoomMap map, TokenStream in) {
+		
+		this.map = map;
+		this.in = in;
+	}
+	
+	/**
+	 * Reads the specified TEXTMAP lump, adding its blocks to the map.
+	 * @param map The map to load.
+	 * @param lump The TEXTMAP lump.
+	 * @param grammar The TEXTMAP Grammar, used to lex any part of the lump that is out of the ordinary.
+	 * @param pipelined True if the lump should be lexed on a separate thread while its blocks are loaded.
+	 * @throws ParserException If part of the lump can't be lexed.
+	 */
+	static void read(UniversalDoomMap map, ByteBuffer lump, Grammar grammar, boolean pipelined) throws ParserException {
+		
+		TextMapTokenStream tokens = new TextMapTokenStream(lump, grammar);
+		if(!pipelined) {
+			
+			new TextMapReader(map, tokens).read();
+			return;
+		}
+		
+		//Reading stops early on a malformed expression, so the lexing thread has to be stopped too
+		try(PipelinedTokenStream pipeline = new PipelinedTokenStream(tokens)) {
+			
+			new TextMapReader(map, pipeline).read();
+		}
+	}
+	
+	
+	private void read() throws ParserException {
+		
+		for(LexerToken identifier = next(); identifier != null && identifier.name.equals("Identifier"); identifier = next()) {
+			
+			LexerToken token = next();
+			if(token == null)
+				return;
+			
+			if(token.name.equals("OpenBracket")) {
+				
+				if(!readBlock(identifier))
+					return;
+			}
+			else if(token.name.equals("Equals")) {
+				
+				Value value = readValue();
+				if(value == null || !isNext("Semicolon"))
+					return;
+				
+				//If the identifier being assigned is 'namespace' then set the namespace of our UDMF map
+				if(!identifier.getValue().equalsIgnoreCase("namespace"))
+					throw new RuntimeException("Unexpected assignment expression found " + identifier.getValue());
+				
+				map.setNamespace(value.asString());
+			}
+			else {
+				
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the assignments of a block up to its closing bracket, then adds it to the map.
+	 * @param type The identifier naming the type of block.
+	 * @return False if the block is malformed.
+	 * @throws ParserException If part of the lump can't be lexed.
+	 */
+	private boolean readBlock(LexerToken type) throws ParserException {
+		
+		Block block = Block.create(type.getLowerCaseValue());
+		for(LexerToken token = next(); token != null; token = next()) {
+			
+			if(token.name.equals("CloseBracket")) {
+				
+				map.addBlock(block);
+				return true;
+			}
+			
+			if(!token.name.equals("Identifier") || !isNext("Equals"))
+				return false;
+			
+			Value value = readValue();
+			if(value == null || !isNext("Semicolon"))
+				return false;
+			
+			block.putValue(token.getLowerCaseValue(), value);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Reads the value of an assignment.
+	 * @return The value, or null if the next token isn't a value.
+	 * @throws ParserException If part of the lump can't be lexed.
+	 */
+	private Value readValue() throws ParserException {
+		
+		LexerToken token = next();
+		if(token == null)
+			return null;
+		
+		switch(token.name) {
+		case "Integer":
+			return values.visitInteger(token);
+		case "Float":
+			return values.visitFloat(token);
+		case "Boolean":
+			return values.visitBoolean(token);
+		case "QuotedString":
+			Value value = strings.get(token.getValue());
+			if(value == null) {
+				
+				value = values.visitQuotedString(token);
+				strings.put(token.getValue(), value);
+			}
+			
+			return value;
+		default:
+			return null;
+		}
+	}
+	
+	
+	private boolean isNext(String name) throws ParserException {
+		
+		LexerToken token = next();
+		return token != null && token.name.equals(name);
+	}
+	
+	/**
+	 * Reads the next token of the lump.
+	 * @return The next token, or null if there are none left.
+	 * @throws ParserException If the next token can't be lexed.
+	 */
+	private LexerToken next() throws ParserException {
+		
+		try {
+			
+			return in.nextToken();
+		} catch (ParserEndOfStreamException e) {
+			
+			return null;
+		}
+	}
+}
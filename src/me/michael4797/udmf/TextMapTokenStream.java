@@ -0,0 +1,226 @@
+package me.michael4797.udmf;
+
+import java.nio.ByteBuffer;
+
+import me.michael4797.parse.ByteCharSequence;
+import me.michael4797.parse.ByteStream;
+import me.michael4797.parse.Grammar;
+import me.michael4797.parse.Lexer;
+import me.michael4797.parse.LexerToken;
+import me.michael4797.parse.ParserEndOfStreamException;
+import me.michael4797.parse.ParserException;
+import me.michael4797.parse.TokenStream;
+
+/**
+ * A TokenStream that reads a TEXTMAP lump using a StructuralIndex instead of a Lexer, producing the same tokens
+ * the TEXTMAP Grammar would. Each word between two structural characters is checked against the few types of token
+ * a TEXTMAP contains. If anything doesn't fit, such as a malformed number or a string that is never closed,
+ * the rest of the lump is handed to the Grammar's Lexer, so errors are reported exactly as they would be otherwise.
+ */
+class TextMapTokenStream implements TokenStream {
+
+	private final Grammar grammar;
+	private final ByteBuffer data;
+	private final CharSequence input;
+	private final StructuralIndex index;
+	private int position;
+	private int next;
+	private Lexer fallback;
+	
+	/**
+	 * Indexes the specified TEXTMAP lump to be read as tokens.
+	 * @param lump The TEXTMAP lump, between its position and limit.
+	 * @param grammar The TEXTMAP Grammar, which lexes the rest of the lump if it can't be read from the index.
+	 */
+	TextMapTokenStream(ByteBuffer lump, Grammar grammar) {
+		
+		this.grammar = grammar;
+		data = lump.slice();
+		input = new ByteCharSequence(data);
+		index = StructuralIndex.build(data);
+	}
+	
+	
+	@Override
+	public LexerToken nextToken() throws ParserException {
+		
+		if(fallback != null)
+			return fallback.nextToken();
+		
+		while(true) {
+			
+			int boundary = next < index.size() ? index.get(next) : data.limit();
+			while(position < boundary && isWhiteSpace(data.get(position)))
+				++position;
+			
+			//There's a word before the next structural character
+			if(position < boundary) {
+				
+				int end = position + 1;
+				while(end < boundary && !isWhiteSpace(data.get(end)))
+					++end;
+				
+				String name = getWordType(position, end);
+				if(name == null)
+					return fallBack();
+				
+				LexerToken token = grammar.createToken(name, input, position, end - position);
+				position = end;
+				return token;
+			}
+			
+			if(next == index.size())
+				throw new ParserEndOfStreamException("Unable to read from source, end of stream.");
+			
+			switch(data.get(boundary)) {
+			case '{':
+				++next;
+				position = boundary + 1;
+				return new LexerToken("OpenBracket", "{");
+			case '}':
+				++next;
+				position = boundary + 1;
+				return new LexerToken("CloseBracket", "}");
+			case '=':
+				++next;
+				position = boundary + 1;
+				return new LexerToken("Equals", "=");
+			case ';':
+				++next;
+				position = boundary + 1;
+				return new LexerToken("Semicolon", ";");
+			default:
+				//A quoted string or a comment, both of which are followed by where they end
+				int end = index.get(next + 1);
+				if(end == StructuralIndex.UNTERMINATED)
+					return fallBack();
+				
+				next += 2;
+				position = end + 1;
+				if(data.get(boundary) == '"')
+					return grammar.createToken("QuotedString", input, boundary, end + 1 - boundary);
+			}
+		}
+	}
+	
+	/**
+	 * Lexes the rest of the lump with the Grammar's Lexer, starting from the current position.
+	 * @return The next token.
+	 * @throws ParserException If no token can be lexed.
+	 */
+	private LexerToken fallBack() throws ParserException {
+		
+		ByteBuffer rest = data.duplicate();
+		rest.position(position);
+		fallback = grammar.compileLexer(new ByteStream(rest));
+		return fallback.nextToken();
+	}
+	
+	/**
+	 * Determines the type of token a word is, matching the patterns of the TEXTMAP Grammar.
+	 * @param start The position of the first character of the word.
+	 * @param end The position after the last character of the word.
+	 * @return The name of the token, or null if the whole word isn't a single token.
+	 */
+	private String getWordType(int start, int end) {
+		
+		byte first = data.get(start);
+		if(isLetter(first)) {
+			
+			for(int i = start + 1; i < end; ++i) {
+				
+				byte c = data.get(i);
+				if(!isLetter(c) && !isDigit(c))
+					return null;
+			}
+			
+			if(matches(start, end, "true") || matches(start, end, "false"))
+				return "Boolean";
+			
+			return "Identifier";
+		}
+		
+		//Hexadecimal integers, which can't have a sign
+		if(first == '0' && end - start > 2 && data.get(start + 1) == 'x') {
+			
+			for(int i = start + 2; i < end; ++i)
+				if(Character.digit(data.get(i), 16) == -1)
+					return null;
+			
+			return "Integer";
+		}
+		
+		int i = start;
+		if(first == '+' || first == '-')
+			++i;
+		
+		int digits = i;
+		while(i < end && isDigit(data.get(i)))
+			++i;
+		
+		if(i == digits)
+			return null;
+		
+		if(i == end) {
+			
+			//An integer either starts with 1-9 or is unsigned with a leading 0
+			if(data.get(digits) != '0' || digits == start)
+				return "Integer";
+			
+			return null;
+		}
+		
+		if(data.get(i++) != '.')
+			return null;
+		
+		while(i < end && isDigit(data.get(i)))
+			++i;
+		
+		if(i < end && (data.get(i) == 'e' || data.get(i) == 'E')) {
+			
+			++i;
+			if(i < end && (data.get(i) == '+' || data.get(i) == '-'))
+				++i;
+			
+			int exponent = i;
+			while(i < end && isDigit(data.get(i)))
+				++i;
+			
+			if(i == exponent)
+				return null;
+		}
+		
+		return i == end ? "Float" : null;
+	}
+	
+	
+	private boolean matches(int start, int end, String text) {
+		
+		if(end - start != text.length())
+			return false;
+		
+		for(int i = 0; i < text.length(); ++i)
+			if(data.get(start + i) != text.charAt(i))
+				return false;
+		
+		return true;
+	}
+	
+	
+	private static boolean isWhiteSpace(byte c) {
+		
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == 0;
+	}
+	
+	
+	private static boolean isLetter(byte c) {
+		
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_';
+	}
+	
+	
+	private static boolean isDigit(byte c) {
+		
+		return c >= '0' && c <= '9';
+	}
+}
@@ -1,16 +1,23 @@
 package me.michael4797.udmf;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Set;
 
 import me.michael4797.parse.ByteStream;
 import me.michael4797.parse.Grammar;
+import me.michael4797.parse.LexerScanners;
+import me.michael4797.parse.Parser;
 import me.michael4797.parse.ParserException;
 import me.michael4797.parse.ParserToken;
 import me.michael4797.wad.WadFile;
+import me.michael4797.wad.WadMap;
 
 /**
  * All the information representing a Map in UDMF format.
+ * Maps in the binary Doom and Hexen formats are converted into the same blocks when they are loaded.
  */
 public class UniversalDoomMap {
 
@@ -19,9 +26,9 @@ public class UniversalDoomMap {
 	
 	static {
 		//Defines the Grammar for TEXTMAP
-		textmapGrammar.addLexerIgnoreRule("WhiteSpace", "[\t\r\n \\x00]+");
-		textmapGrammar.addLexerIgnoreRule("SingleLineComment", "//[^\n]*\n");
-		textmapGrammar.addLexerIgnoreRule("MultiLineComment", "/\\*[^\\*]*(\\*[^/][^\\*]*)*\\*/");
+		textmapGrammar.addLexerIgnoreRule("WhiteSpace", LexerScanners.whiteSpace);
+		textmapGrammar.addLexerIgnoreRule("SingleLineComment", LexerScanners.singleLineComment);
+		textmapGrammar.addLexerIgnoreRule("MultiLineComment", LexerScanners.multiLineComment);
 
 		textmapGrammar.addParserRule("ExpressionList", "Expression ExpressionList | /-");
 		textmapGrammar.addParserRule("Expression", "Block | Assignment");
@@ -38,12 +45,12 @@ public class UniversalDoomMap {
 		textmapGrammar.addLexerRule("Identifier", "[A-Za-z_]+[A-Za-z0-9_]*");
 		textmapGrammar.addLexerRule("Integer", "([+-]?[1-9]+[0-9]*)|(0[0-9]*)|(0x[0-9A-Fa-f]+)");
 		textmapGrammar.addLexerRule("Float", "[+-]?[0-9]+\\.[0-9]*([eE][+-]?[0-9]+)?");
-		textmapGrammar.addLexerRule("QuotedString", "\"([^\"\\\\]*(\\\\.[^\"\\\\]*)*)\"");
+		textmapGrammar.addLexerRule("QuotedString", LexerScanners.quotedString);
 		
 		//Defines the Grammar for MapInfo
-		mapInfoGrammar.addLexerIgnoreRule("WhiteSpace", "[\t\r\n \\x00]+");
-		mapInfoGrammar.addLexerIgnoreRule("SingleLineComment", "//[^\n]*\n");
-		mapInfoGrammar.addLexerIgnoreRule("MultiLineComment", "/\\*[^\\*]*(\\*[^/][^\\*]*)*\\*/");
+		mapInfoGrammar.addLexerIgnoreRule("WhiteSpace", LexerScanners.whiteSpace);
+		mapInfoGrammar.addLexerIgnoreRule("SingleLineComment", LexerScanners.singleLineComment);
+		mapInfoGrammar.addLexerIgnoreRule("MultiLineComment", LexerScanners.multiLineComment);
 
 		mapInfoGrammar.addParserRule("MapInfo", "Map MapCode QuotedString OpenBrace PropertyList CloseBrace");
 		mapInfoGrammar.addParserRule("MapCode", "Identifier | Code");
@@ -59,11 +66,21 @@ public class UniversalDoomMap {
 		mapInfoGrammar.addLexerRule("Map", "[Mm][Aa][Pp]");
 		mapInfoGrammar.addLexerRule("Float", "[0-9]+\\.[0-9]+");
 		mapInfoGrammar.addLexerRule("Integer", "([+-]?[1-9]+[0-9]*)|[0]");
-		mapInfoGrammar.addLexerRule("QuotedString", "\"([^\"\\\\]*(\\\\.[^\"\\\\]*)*)\"");
+		mapInfoGrammar.addLexerRule("QuotedString", LexerScanners.quotedString);
 		mapInfoGrammar.addLexerRule("Identifier", "[A-Za-z_]+[A-Za-z0-9_]*");
 		mapInfoGrammar.addLexerRule("Code", "[A-Za-z0-9_]*");
 	}
 	
+	
+	/**
+	 * Whether TEXTMAP lumps are parsed with the TEXTMAP Grammar rather than read directly, for checking one against the other.
+	 */
+	private static volatile boolean useGrammar;
+	
+	/**
+	 * Whether TEXTMAP lumps are lexed on a separate thread while their blocks are loaded.
+	 */
+	private static volatile boolean pipelined;
 
 	public final String mapCode;
 	public final String mapName;
@@ -72,35 +89,106 @@ public class UniversalDoomMap {
 	private String namespace;
 	
 
+	/**
+	 * Loads the first map in the specified WAD.
+	 * @param wad The WAD containing the map.
+	 */
 	public UniversalDoomMap(WadFile wad) {
 		
-		byte[] mapData = wad.getLump("TextMap");
-		byte[] mapInfo = wad.getLump("MapInfo");
+		this(wad, firstMap(wad));
+	}
+	
+	/**
+	 * Loads the specified map, using the MAPINFO lump of the WAD it belongs to for its name if there is one.
+	 * The map may be in either the UDMF format or one of the binary formats.
+	 * @param wad The WAD containing the map.
+	 * @param map The lumps making up the map.
+	 */
+	public UniversalDoomMap(WadFile wad, WadMap map) {
 		
-		if(mapData == null || mapInfo == null)
-			throw new IllegalArgumentException("The specified wad does not contain UDMF map data");
+		if(map.isUniversal())
+			loadTextMap(map);
+		else
+			BinaryMapLoader.load(this, map);
 		
-		try {
+		//Wads in the binary formats often have no MAPINFO lump, in which case the map is only known by its marker
+		ByteBuffer mapInfo = wad.getLump("MapInfo");
+		ParserToken definition = mapInfo == null ? null : findDefinition(mapInfo, wad, map);
+		if(definition != null) {
 			
-			//Parses the TEXTMAP lump
-			ParserToken token = textmapGrammar.compileParser(new ByteStream(mapData)).parse("ExpressionList");
+			//We know where the MapCode and MapName are in the AST, so no use visiting it, just retrieve it the old fashioned way.
+			mapCode = definition.getChild(1).getValue();
+			String quotedName = definition.getChild(2).getValue();
+			mapName = quotedName.substring(1, quotedName.length()-1); //Get rid of the quotes around the quoted map name
+		}
+		else {
 			
-			if(token == null)
-				throw new RuntimeException("Error parsing TEXTMAP lump");
+			mapCode = map.name;
+			mapName = "";
+		}
+	}
+	
+	/**
+	 * Parses the specified MAPINFO lump and finds the definition of the specified map.
+	 * @param mapInfo The MAPINFO lump.
+	 * @param wad The WAD containing the map.
+	 * @param map The lumps making up the map.
+	 * @return The definition of the map, or null if the lump doesn't define it.
+	 */
+	private static ParserToken findDefinition(ByteBuffer mapInfo, WadFile wad, WadMap map) {
+		
+		//Parses the MAPINFO lump, which may define any number of maps
+		ArrayList<ParserToken> definitions = new ArrayList<>();
+		Parser parser = mapInfoGrammar.compileParser(new ByteStream(mapInfo));
+		try {
 			
-			//Visits the TEXTMAP lump to load all of the Blocks
-			token.accept(new ExpressionVisitor(this));
+			for(ParserToken token = parser.parse("MapInfo"); token != null; token = parser.parse("MapInfo"))
+				definitions.add(token);
+		} catch (ParserException e) {
 			
-			//Parses the MAPINFO lump
-			token = mapInfoGrammar.compileParser(new ByteStream(mapInfo)).parse("MapInfo");
+			//We only understand map definitions, so anything after the last one we can read is ignored
+			if(definitions.isEmpty())
+				throw new IllegalArgumentException("Error parsing MAPINFO lump", e);
+		}
+		
+		if(definitions.isEmpty())
+			throw new RuntimeException("Error parsing MAPINFO lump");
+		
+		//Find the definition for this map by its code
+		for(ParserToken token: definitions)
+			if(token.getChild(1).getValue().equalsIgnoreCase(map.name))
+				return token;
+		
+		//If the WAD holds only this map then its lone definition must be ours, whatever code it was given
+		if(definitions.size() == 1 && wad.getMaps().size() == 1)
+			return definitions.get(0);
+		
+		return null;
+	}
+	
+	/**
+	 * Parses the TEXTMAP lump of the specified map and loads its blocks.
+	 * @param map The lumps making up the map.
+	 */
+	private void loadTextMap(WadMap map) {
+		
+		ByteBuffer mapData = map.getLump("TextMap");
+		if(mapData == null)
+			throw new IllegalArgumentException("The specified wad does not contain UDMF map data");
+		
+		try {
 			
-			if(token == null)
-				throw new RuntimeException("Error parsing MAPINFO lump");
+			if(!useGrammar) {
+				
+				TextMapReader.read(this, mapData, textmapGrammar, pipelined);
+				return;
+			}
 			
-			//We know where the MapCode and MapName are in the AST, so no use visiting it, just retrieve it the old fashioned way.
-			mapCode = token.getChild(1).value;
-			String quotedName = token.getChild(2).value;
-			mapName = quotedName.substring(1, quotedName.length()-1); //Get rid of the quotes around the quoted map name
+			//Parses the TEXTMAP lump, loading each Block as it's parsed
+			//The Grammar's own Lexer is used rather than the structural index, so the check covers the tokens too
+			Parser parser = textmapGrammar.compileParser(new ByteStream(mapData));
+			if(!parser.parse("ExpressionList", new ExpressionListener(this)))
+				throw new RuntimeException("Error parsing TEXTMAP lump");
 		} catch (ParserException e) {
 			
 			throw new IllegalArgumentException("Error parsing TEXTMAP lump", e);
@@ -108,7 +196,54 @@ public class UniversalDoomMap {
 	}
 	
 	/**
-	 * Adds a block of data to this map, called from the ExpressionVisitor when visiting the AST of the TEXTMAP lump.
+	 * Sets whether TEXTMAP lumps are parsed with the general purpose TEXTMAP Grammar and its Lexer, which is much slower than
+	 * indexing and reading them directly but can be used to check that both load the same blocks.
+	 * @param useGrammar True if the Grammar should be used.
+	 */
+	public static void setUseGrammar(boolean useGrammar) {
+		
+		UniversalDoomMap.useGrammar = useGrammar;
+	}
+	
+	/**
+	 * Sets whether TEXTMAP lumps are lexed on a separate thread while their blocks are loaded. This lowers the time
+	 * taken by a single huge map, but only helps when there are idle cores, not when many maps are loaded at once.
+	 * @param pipelined True if lexing should be done on a separate thread.
+	 */
+	public static void setPipelined(boolean pipelined) {
+		
+		UniversalDoomMap.pipelined = pipelined;
+	}
+	
+	/**
+	 * Creates an empty map, used when loading a map from a snapshot rather than from a WAD.
+	 * @param namespace The namespace of the map.
+	 * @param mapCode The map's code.
+	 * @param mapName The map's name.
+	 */
+	UniversalDoomMap(String namespace, String mapCode, String mapName) {
+		
+		this.namespace = namespace;
+		this.mapCode = mapCode;
+		this.mapName = mapName;
+	}
+	
+	/**
+	 * Finds the first map in the specified WAD.
+	 * @param wad The WAD to search.
+	 * @return The first map.
+	 */
+	private static WadMap firstMap(WadFile wad) {
+		
+		ArrayList<WadMap> maps = wad.getMaps();
+		if(maps.isEmpty())
+			throw new IllegalArgumentException("The specified wad does not contain any map data");
+		
+		return maps.get(0);
+	}
+	
+	/**
+	 * Adds a block of data to this map, called when loading the TEXTMAP lump.
 	 * @param block The block to be added.
 	 */
 	protected void addBlock(Block block) {
@@ -134,8 +269,7 @@ public class UniversalDoomMap {
 	}
 	
 	/**
-	 * Sets the namespace to what is defined in the TEXTMAP lump, this is called from the ExpressionVistior when 
-	 * visiting the AST of the TEXTMAP lump.
+	 * Sets the namespace to what is defined in the TEXTMAP lump, this is called when loading the TEXTMAP lump.
 	 * @param namespace The namespace in the TEXTMAP lump.
 	 */
 	protected void setNamespace(String namespace) {
@@ -143,6 +277,15 @@ public class UniversalDoomMap {
 		this.namespace = namespace;
 	}
 	
+	/**
+	 * Retrieves the types of every block in this map.
+	 * @return An unmodifiable view of the block types.
+	 */
+	public Set<String> getBlockTypes() {
+		
+		return Collections.unmodifiableSet(blocks.keySet());
+	}
+	
 	/**
 	 * Retrieves the list of blocks of the specified type defined in this maps' TEXTMAP lump.
 	 * Modifications made to the returned list will be reflected in the map.
@@ -23,24 +23,28 @@ public class ValueVisitor implements TokenVisitor<Value>{
 	
 	public Value visitBoolean(Token token) {
 		
-		return new BooleanValue(token.value.toLowerCase().equals("true")); //Return the boolean as a BooleanValue
+		return new BooleanValue(token.getValue().toLowerCase().equals("true")); //Return the boolean as a BooleanValue
 	}
 
 	
 	public Value visitInteger(Token token) {
 		
-		return new IntegerValue(Integer.parseInt(token.value)); //Return the integer as an IntegerValue
+		String value = token.getValue();
+		if(value.startsWith("0x")) //Hexadecimal integers may use all 32 bits
+			return new IntegerValue((int) Long.parseLong(value.substring(2), 16));
+		
+		return new IntegerValue(Integer.parseInt(value)); //Return the integer as an IntegerValue
 	}
 
 	
 	public Value visitFloat(Token token) {
 		
-		return new FloatValue(Double.parseDouble(token.value)); //Return the float as a FloatValue
+		return new FloatValue(Double.parseDouble(token.getValue())); //Return the float as a FloatValue
 	}
 
 	
 	public Value visitQuotedString(Token token) {
 		
-		return new StringValue(token.value.substring(1, token.value.length()-1)); //Return the String as a StringValue
+		return new StringValue(token.getValue().substring(1, token.getValue().length()-1)); //Return the String as a StringValue
 	}
 }
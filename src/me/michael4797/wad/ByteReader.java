@@ -2,97 +2,249 @@ package me.michael4797.wad;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Convenience class used to read binary data from a WAD file.
+ * All values are read in little-endian order directly from a ByteBuffer, either one that
+ * wraps the entire input or one that is refilled in large chunks from an InputStream.
  */
 public class ByteReader {
 
+	private static final int BLOCK_SIZE = 65536;
+	
 	private final InputStream in;
-	private byte[] data;
-	private int index;
-	private int limit;
+	private final ByteBuffer data;
 	
 	public ByteReader(InputStream in){
 		
 		this.in = in;
-		data = new byte[8192];
-		index = 0;
-		limit = 0;
+		data = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		data.limit(0);
 	}
 	
 	public ByteReader(byte[] data){
 		
-		this.data = data;
-		in = null;
-		index = 0;
-		limit = this.data.length;
+		this(ByteBuffer.wrap(data));
 	}
 	
 	public ByteReader(byte[] data, int offset, int length){
 		
-		this.data = data;
-		in = null;
-		limit = offset+length;
-		index = offset;
+		this(ByteBuffer.wrap(data, offset, length));
 	}
 	
+	/**
+	 * Reads from the specified buffer, starting at its current position and ending at its limit.
+	 * The specified buffer is not modified.
+	 * @param data The buffer to read from.
+	 */
+	public ByteReader(ByteBuffer data){
 	
-	private boolean readBlock() {
+		this.data = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		in = null;
+	}
+	
+	/**
+	 * Refills the buffer from the underlying InputStream until at least the specified number of bytes are available.
+	 * @param required The number of bytes that must be available.
+	 * @return False if the end of the stream was reached before enough bytes could be read.
+	 */
+	private boolean readBlock(int required) {
 		
 		if(in == null)
 			return false;
 		
-		index = 0;
+		data.compact();
 		try {
 			
-			limit = in.read(data, 0, data.length);
+			while(data.position() < required) {
+				
+				int read = in.read(data.array(), data.arrayOffset() + data.position(), data.remaining());
+				if(read == -1)
+					break;
+				
+				data.position(data.position() + read);
+			}
 		} catch (IOException e) {
 			
 			throw new RuntimeException("Error reading underlying channel", e);
+		} finally {
+			
+			data.flip();
 		}
 		
-		if(limit == -1)
-			return false;
+		return data.remaining() >= required;
+	}
 		
-		return true;
+	/**
+	 * Ensures the specified number of bytes can be read from the buffer.
+	 * @param size The number of bytes.
+	 */
+	private void require(int size) {
+		
+		if(data.remaining() < size && !readBlock(size))
+			throw new RuntimeException("End of stream");
 	}
 	
 	
 	public boolean hasMoreData(){
 		
-		if(index >= limit)
-			return readBlock();
-		
-		return true;
+		return data.hasRemaining() || readBlock(1);
 	}
 	
 	
 	public byte[] getData(){
 		
-		return Arrays.copyOfRange(data, 0, limit);
+		byte[] copy = new byte[data.limit()];
+		data.duplicate().position(0).get(copy);
+		return copy;
+	}
+	
+	/**
+	 * Retrieves the offset of the next byte to be read, relative to the start of the input.
+	 * Only supported when reading from a buffer.
+	 * @return The current offset.
+	 */
+	public int getPosition(){
+		
+		if(in != null)
+			throw new UnsupportedOperationException("Cannot retrieve the position of a stream");
+		
+		return data.position();
+	}
+	
+	/**
+	 * Moves to the specified offset, relative to the start of the input.
+	 * Only supported when reading from a buffer.
+	 * @param offset The offset of the next byte to be read.
+	 */
+	public void setPosition(int offset){
+		
+		if(in != null)
+			throw new UnsupportedOperationException("Cannot seek within a stream");
+		
+		data.position(offset);
+	}
+	
+	/**
+	 * Creates a read-only view of part of the input without copying it.
+	 * Only supported when reading from a buffer.
+	 * @param offset The offset of the view, relative to the start of the input.
+	 * @param length The length of the view, in bytes.
+	 * @return The newly created view.
+	 */
+	public ByteBuffer slice(int offset, int length){
+		
+		if(in != null)
+			throw new UnsupportedOperationException("Cannot slice a stream");
+		
+		if(offset < 0 || length < 0 || offset > data.limit() - length)
+			throw new IndexOutOfBoundsException("Slice of length " + length + " at " + offset + " is out of bounds");
+		
+		ByteBuffer view = data.duplicate();
+		view.limit(offset + length).position(offset);
+		return view.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Creates an InputStream that reads the remaining data from this reader. Reading from the
+	 * returned stream advances this reader.
+	 * @return The newly created InputStream.
+	 */
+	public InputStream asInputStream(){
+		
+		return new InputStream() {
+			
+			@Override
+			public int read() {
+				
+				return hasMoreData() ? data.get() & 255 : -1;
+			}
+			
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				
+				if(length == 0)
+					return 0;
+				
+				if(!data.hasRemaining()) {
+					
+					//Large reads skip our buffer entirely rather than being copied through it
+					if(in != null && length >= BLOCK_SIZE)
+						return in.read(buffer, offset, length);
+					
+					if(!hasMoreData())
+						return -1;
+				}
+				
+				int count = Math.min(length, data.remaining());
+				data.get(buffer, offset, count);
+				return count;
+			}
+			
+			@Override
+			public int available() throws IOException {
+				
+				return data.remaining() + (in != null ? in.available() : 0);
+			}
+		};
 	}
 	
 	
 	public byte readByte(){
 		
-		if(!hasMoreData())
-			throw new RuntimeException("End of stream");
-
-		return data[index++];
+		require(1);
+		return data.get();
 	}
 	
 	
 	public byte[] readByteArray(int size){
 		
 		byte[] data = new byte[size];
-		for(int i = 0; i < data.length; i++)
-			data[i] = readByte();
+		readBytes(data, 0, size);
 		
 		return data;
 	}
 	
+	/**
+	 * Reads the specified number of bytes into the specified array.
+	 * @param buffer The array to read into.
+	 * @param offset The offset into the array of the first byte.
+	 * @param length The number of bytes to read.
+	 */
+	public void readBytes(byte[] buffer, int offset, int length){
+		
+		int count = Math.min(length, data.remaining());
+		data.get(buffer, offset, count);
+		offset += count;
+		length -= count;
+		
+		if(length == 0)
+			return;
+		
+		if(in == null)
+			throw new RuntimeException("End of stream");
+		
+		//Whatever is left is read straight from the stream into the destination
+		try {
+			
+			while(length > 0) {
+				
+				int read = in.read(buffer, offset, length);
+				if(read == -1)
+					throw new RuntimeException("End of stream");
+				
+				offset += read;
+				length -= read;
+			}
+		} catch (IOException e) {
+			
+			throw new RuntimeException("Error reading underlying channel", e);
+		}
+	}
+	
 	
 	public boolean readBoolean(){
 		
@@ -102,62 +254,68 @@ public class ByteReader {
 	
 	public short readShort(){
 		
-		return (short) ((readByte()&255)+((readByte()&255)<<8));
+		require(2);
+		return data.getShort();
 	}
 	
 	
 	public int readInt(){
 		
-		return (readShort()&65535)+((readShort()&65535)<<16);
+		require(4);
+		return data.getInt();
 	}
 	
 
 	public long readLong() {
 
-		return (readInt()&4294967295L)+((readInt()&4294967295L)<<32);
+		require(8);
+		return data.getLong();
 	}
 	
 	
 	public float readFloat(){
 		
-		return Float.intBitsToFloat(readInt());
+		require(4);
+		return data.getFloat();
 	}
 	
 	
 	public String readString(int width){
 		
-		String string = "";
-		boolean end = false;
-		for(int i = 0; i < width; i++){
-			
-			char c = (char) readByte();
-			
-			if(end)
-				continue;
+		byte[] string = readByteArray(width);
+		int length = 0;
+		while(length < width && string[length] != 0)
+			++length;
 			
-			if(c == 0)
-				end = true;
-			else
-				string += c;
-		}
-		
-		return string;
+		return new String(string, 0, length, StandardCharsets.ISO_8859_1);
 	}
 	
 	
 	public String readString(){
 		
-		String string = "";
+		StringBuilder string = new StringBuilder();
 		for(;;){
 			
-			char c = (char) readByte();
-			if(c == 0)
-				break;
+			require(1);
+			
+			//Scan what's already buffered for the terminator before falling back to reading more
+			int start = data.position();
+			int end = start;
+			while(end < data.limit() && data.get(end) != 0)
+				++end;
 			
-			if(string.length() < 2047)
-				string += c;
+			for(int i = start; i < end && string.length() < 2047; ++i)
+				string.append((char) (data.get(i) & 255));
+			
+			if(end < data.limit()) {
+				
+				data.position(end + 1);
+				break;
+			}
+		
+			data.position(end);
 		}
 		
-		return string;
+		return string.toString();
 	}
 }
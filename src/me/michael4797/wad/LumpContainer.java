@@ -0,0 +1,16 @@
+package me.michael4797.wad;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A collection of named lumps, such as an entire WAD file or a single map within one.
+ */
+public interface LumpContainer {
+
+	/**
+	 * Retrieves the lump with the specified name.
+	 * @param name The name of the lump, case-insensitive.
+	 * @return A read-only view of the lump, or null if the lump does not exist.
+	 */
+	public ByteBuffer getLump(String name);
+}
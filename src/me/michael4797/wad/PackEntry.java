@@ -0,0 +1,65 @@
+package me.michael4797.wad;
+
+/**
+ * Describes a single file stored in a PackFile, as read from the archive's central directory.
+ */
+public class PackEntry {
+
+	/**
+	 * The compression method used for entries stored without compression.
+	 */
+	public static final int STORED = 0;
+	
+	/**
+	 * The compression method used for entries compressed with DEFLATE.
+	 */
+	public static final int DEFLATED = 8;
+	
+	public final String name;
+	public final int method;
+	public final long compressedSize;
+	public final long size;
+	final long headerOffset;
+	
+	/**
+	 * Constructs an entry from the information in the central directory.
+	 * @param name The full path of the entry within the archive.
+	 * @param method The compression method of the entry.
+	 * @param compressedSize The size of the entry's data as it is stored in the archive.
+	 * @param size The size of the entry's data once it is decompressed.
+	 * @param headerOffset The location of the entry's local header in the archive.
+	 */
+	PackEntry(String name, int method, long compressedSize, long size, long headerOffset) {
+		
+		this.name = name;
+		this.method = method;
+		this.compressedSize = compressedSize;
+		this.size = size;
+		this.headerOffset = headerOffset;
+	}
+	
+	/**
+	 * Checks if this entry is stored without compression, in which case its data can be read without copying.
+	 * @return True if this entry is not compressed.
+	 */
+	public boolean isStored() {
+		
+		return method == STORED;
+	}
+	
+	/**
+	 * Checks if this entry represents a directory rather than a file.
+	 * @return True if this entry is a directory.
+	 */
+	public boolean isDirectory() {
+		
+		return name.endsWith("/");
+	}
+	
+	
+	@Override
+	public String toString() {
+		
+		return name;
+	}
+}
@@ -0,0 +1,268 @@
+package me.michael4797.wad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads the contents of a pk3, or any other zip archive, through a memory mapping of the file.
+ * The central directory is parsed directly, and entries that are stored without compression
+ * are returned as views of the mapping rather than being copied.
+ */
+public class PackFile {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_HEADER = 0x06054b50;
+	
+	private final ByteBuffer data;
+	private final ArrayList<PackEntry> entries = new ArrayList<>();
+	private final HashMap<String, PackEntry> names = new HashMap<>();
+	
+	/**
+	 * Memory maps the archive at the specified location and reads its central directory.
+	 * @param path The location of the archive.
+	 * @throws IOException If the file cannot be mapped or is not a valid archive.
+	 */
+	public PackFile(Path path) throws IOException {
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Archive " + path + " is too large to be mapped");
+			
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		int end = findEndOfCentralDirectory();
+		int count = data.getShort(end + 10) & 65535;
+		long directorySize = data.getInt(end + 12) & 4294967295L;
+		long directoryOffset = data.getInt(end + 16) & 4294967295L;
+		
+		if(count == 65535 || directorySize == 4294967295L || directoryOffset == 4294967295L)
+			throw new IOException("Zip64 archives are not supported");
+		
+		if(directoryOffset + directorySize > end)
+			throw new IOException("Invalid central directory");
+		
+		int position = (int) directoryOffset;
+		for(int i = 0; i < count; ++i) {
+			
+			if(position + 46 > end || data.getInt(position) != CENTRAL_HEADER)
+				throw new IOException("Invalid central directory entry");
+			
+			int flags = data.getShort(position + 8) & 65535;
+			int method = data.getShort(position + 10) & 65535;
+			long compressedSize = data.getInt(position + 20) & 4294967295L;
+			long size = data.getInt(position + 24) & 4294967295L;
+			int nameLength = data.getShort(position + 28) & 65535;
+			int extraLength = data.getShort(position + 30) & 65535;
+			int commentLength = data.getShort(position + 32) & 65535;
+			long headerOffset = data.getInt(position + 42) & 4294967295L;
+			
+			byte[] name = new byte[nameLength];
+			data.duplicate().position(position + 46).get(name);
+			
+			//Bit 11 marks names encoded in UTF-8, otherwise we settle for something close to the original code page
+			PackEntry entry = new PackEntry(new String(name, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1),
+					(flags & 1) != 0 ? -1 : method, compressedSize, size, headerOffset);
+			
+			entries.add(entry);
+			names.put(entry.name, entry);
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+	
+	/**
+	 * Retrieves all of the entries in this archive, in the order they appear in the central directory.
+	 * @return An unmodifiable list of the entries.
+	 */
+	public List<PackEntry> getEntries() {
+		
+		return Collections.unmodifiableList(entries);
+	}
+	
+	/**
+	 * Retrieves the entry with the specified name.
+	 * @param name The full path of the entry, case-sensitive.
+	 * @return The entry, or null if it does not exist.
+	 */
+	public PackEntry getEntry(String name) {
+		
+		return names.get(name);
+	}
+	
+	/**
+	 * Retrieves the decompressed data for the specified entry. Stored entries are returned as a
+	 * read-only view of the archive, compressed entries are inflated into a new buffer.
+	 * @param entry The entry to read.
+	 * @return The entry's data.
+	 * @throws IOException If the entry is invalid or uses an unsupported compression method.
+	 */
+	public ByteBuffer getData(PackEntry entry) throws IOException {
+		
+		if(entry.isStored())
+			return getRawData(entry);
+		
+		Inflater inflater = new Inflater(true);
+		try {
+			
+			return getData(entry, inflater);
+		}
+		finally {
+			
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Retrieves the decompressed data for the specified entry using the specified Inflater, which
+	 * allows an Inflater to be reused across many entries.
+	 * @param entry The entry to read.
+	 * @param inflater The Inflater used to decompress the entry, which must expect raw DEFLATE data.
+	 * @return The entry's data.
+	 * @throws IOException If the entry is invalid or uses an unsupported compression method.
+	 */
+	public ByteBuffer getData(PackEntry entry, Inflater inflater) throws IOException {
+		
+		ByteBuffer raw = getRawData(entry);
+		if(entry.isStored())
+			return raw;
+		
+		checkDeflated(entry);
+		if(entry.size > Integer.MAX_VALUE)
+			throw new IOException("Entry " + entry + " is too large to be inflated");
+		
+		byte[] inflated = new byte[(int) entry.size];
+		inflater.reset();
+		inflater.setInput(raw);
+		
+		try {
+			
+			int length = 0;
+			while(length < inflated.length && !inflater.finished()) {
+				
+				int count = inflater.inflate(inflated, length, inflated.length - length);
+				if(count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				
+				length += count;
+			}
+			
+			if(length != inflated.length)
+				throw new IOException("Entry " + entry + " is truncated");
+		} catch (DataFormatException e) {
+			
+			throw new IOException("Entry " + entry + " is corrupt", e);
+		}
+		
+		return ByteBuffer.wrap(inflated).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Opens a stream over the decompressed data for the specified entry. Compressed entries are
+	 * inflated as they are read rather than all at once.
+	 * @param entry The entry to read.
+	 * @return The newly opened InputStream.
+	 * @throws IOException If the entry is invalid or uses an unsupported compression method.
+	 */
+	public InputStream getInputStream(PackEntry entry) throws IOException {
+		
+		InputStream raw = new ByteReader(getRawData(entry)).asInputStream();
+		if(entry.isStored())
+			return raw;
+		
+		checkDeflated(entry);
+		Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(raw, inflater, 65536) {
+			
+			@Override
+			public void close() throws IOException {
+				
+				super.close();
+				inflater.end(); //InflaterInputStream only cleans up Inflaters it created itself
+			}
+		};
+	}
+	
+	/**
+	 * Opens a stream over the decompressed data for the specified entry using the specified Inflater,
+	 * which allows an Inflater to be reused across many entries. Closing the stream does not end the Inflater.
+	 * @param entry The entry to read.
+	 * @param inflater The Inflater used to decompress the entry, which must expect raw DEFLATE data.
+	 * @return The newly opened InputStream.
+	 * @throws IOException If the entry is invalid or uses an unsupported compression method.
+	 */
+	public InputStream getInputStream(PackEntry entry, Inflater inflater) throws IOException {
+		
+		InputStream raw = new ByteReader(getRawData(entry)).asInputStream();
+		if(entry.isStored())
+			return raw;
+		
+		checkDeflated(entry);
+		inflater.reset();
+		return new InflaterInputStream(raw, inflater, 65536);
+	}
+	
+	/**
+	 * Retrieves the data for the specified entry exactly as it is stored in the archive.
+	 * @param entry The entry to read.
+	 * @return A read-only view of the entry's data within the archive.
+	 * @throws IOException If the entry's local header is invalid.
+	 */
+	private ByteBuffer getRawData(PackEntry entry) throws IOException {
+		
+		if(entry.headerOffset + 30 > data.limit() || data.getInt((int) entry.headerOffset) != LOCAL_HEADER)
+			throw new IOException("Invalid local header for entry " + entry);
+		
+		//The local header's name and extra field lengths don't have to match the central directory's
+		int header = (int) entry.headerOffset;
+		long start = header + 30L + (data.getShort(header + 26) & 65535) + (data.getShort(header + 28) & 65535);
+		if(start + entry.compressedSize > data.limit())
+			throw new IOException("Entry " + entry + " lies outside of the archive");
+		
+		ByteBuffer view = data.duplicate();
+		view.limit((int) (start + entry.compressedSize)).position((int) start);
+		return view.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Ensures the specified entry can be inflated.
+	 * @param entry The entry to check.
+	 * @throws IOException If the entry does not use DEFLATE compression.
+	 */
+	private static void checkDeflated(PackEntry entry) throws IOException {
+		
+		if(entry.method != PackEntry.DEFLATED)
+			throw new IOException("Entry " + entry + " uses an unsupported compression method");
+	}
+	
+	/**
+	 * Searches backwards from the end of the archive for the end of central directory record.
+	 * @return The location of the record.
+	 * @throws IOException If the record could not be found.
+	 */
+	private int findEndOfCentralDirectory() throws IOException {
+		
+		//The record is 22 bytes followed by a comment of up to 65535 bytes
+		int last = data.limit() - 22;
+		int first = Math.max(0, last - 65535);
+		for(int i = last; i >= first; --i)
+			if(data.getInt(i) == END_HEADER && i + 22 + (data.getShort(i + 20) & 65535) <= data.limit())
+				return i;
+		
+		throw new IOException("Unable to find the central directory of the archive");
+	}
+}
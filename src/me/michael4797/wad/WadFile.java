@@ -2,11 +2,27 @@ package me.michael4797.wad;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Predicate;
 
-public class WadFile {
+public class WadFile implements LumpContainer{
 
-	private final HashMap<String, byte[]> lumps = new HashMap<>();
+	private final HashMap<String, LumpInfo> lumps = new HashMap<>();
+	private final ArrayList<LumpInfo> directory = new ArrayList<>();
+	
+	/**
+	 * The names of the lumps that can follow the marker of a map in the binary Doom or Hexen formats.
+	 */
+	private static final HashSet<String> binaryMapLumps = new HashSet<>(Arrays.asList("THINGS", "LINEDEFS", "SIDEDEFS",
+			"VERTEXES", "SEGS", "SSECTORS", "NODES", "SECTORS", "REJECT", "BLOCKMAP", "BEHAVIOR", "SCRIPTS"));
 	public final boolean iwad;
 	
 	/**
@@ -17,14 +33,7 @@ public class WadFile {
 	public WadFile(InputStream data) throws IOException {
 		
 		ByteReader reader = new ByteReader(data);
-		String fileType = reader.readString(4);
-		
-		if(fileType.equals("PWAD"))
-			iwad = false;
-		else if(fileType.equals("IWAD"))
-			iwad = true;
-		else
-			throw new IOException("Invalid WAD file");
+		iwad = readFileType(reader);
 		
 		int entries = reader.readInt();
 		int directoryLocation = reader.readInt();
@@ -56,51 +65,299 @@ public class WadFile {
 		else
 			part2 = new byte[0];
 		
-		//Read each lump from our two parts of the data
-		for(LumpInfo l: info)
-			lumps.put(l.name.toUpperCase(), readEntry(l.start, l.length, directorySize, part1, part2));
+		//Each lump is a view into one of our two parts of the data
+		ByteBuffer before = ByteBuffer.wrap(part1);
+		ByteBuffer after = ByteBuffer.wrap(part2);
+		for(LumpInfo l: info) {
+			
+			int start = l.start - 12;
+			if(l.length == 0) //Empty lumps don't always point anywhere meaningful
+				addLump(new LumpInfo(before, 0, 0, l.name));
+			else if(start < part1.length)
+				addLump(new LumpInfo(before, start, l.length, l.name));
+			else
+				addLump(new LumpInfo(after, start - directorySize - part1.length, l.length, l.name));
+		}
+	}
+	
+	/**
+	 * Reads only the lumps accepted by the specified filter from a WAD. All other lump data is
+	 * skipped over as it is streamed and never retained. Since the directory of a WAD usually
+	 * follows its data, the source may be opened a second time to read the retained lumps.
+	 * @param source The source of the WAD's data, which must produce the same data each time it is opened.
+	 * @param filter The test used to decide which lumps should be kept, by name.
+	 * @throws IOException If there is an error reading from the specified source.
+	 */
+	public WadFile(StreamSource source, Predicate<String> filter) throws IOException {
+		
+		InputStream in = source.open();
+		try {
+			
+			ByteReader reader = new ByteReader(readFully(in, 12));
+			iwad = readFileType(reader);
+			
+			int entries = reader.readInt();
+			int directoryLocation = reader.readInt();
+			//Each entry is 16 bytes, so any more than 2^27 entries and the size of the directory won't fit in an int
+			if(entries < 0 || entries >= 1 << 27 || directoryLocation < 12)
+				throw new IOException("Invalid WAD directory");
+			
+			//Skip straight to the directory, discarding everything before it
+			skipFully(in, directoryLocation - 12);
+			reader = new ByteReader(readFully(in, entries << 4));
+			long position = directoryLocation + (entries << 4);
+			
+			LumpInfo[] info = new LumpInfo[entries];
+			ArrayList<Integer> retained = new ArrayList<>();
+			for(int i = 0; i < entries; ++i) {
+				
+				info[i] = new LumpInfo(reader.readInt(), reader.readInt(), reader.readString(8));
+				if(filter.test(info[i].name.toUpperCase()))
+					retained.add(i);
+			}
+			
+			//Read the lumps we want in the order they appear in the file so each pass only moves forward
+			retained.sort((a, b) -> Integer.compare(info[a].start, info[b].start));
+			for(int i: retained) {
+				
+				LumpInfo lump = info[i];
+				if(lump.length == 0) {
+					
+					//Empty lumps often point at arbitrary locations, there's nothing to read anyways
+					info[i] = new LumpInfo(ByteBuffer.allocate(0), 0, 0, lump.name);
+					continue;
+				}
+				
+				if(lump.start < position) {
+					
+					//The lump is behind us, so start reading the source over again
+					in.close();
+					in = source.open();
+					position = 0;
+				}
+				
+				skipFully(in, lump.start - position);
+				byte[] data = readFully(in, lump.length);
+				position = lump.start + lump.length;
+				
+				info[i] = new LumpInfo(ByteBuffer.wrap(data), 0, lump.length, lump.name);
+			}
+			
+			//Lumps that weren't retained are still kept in the directory, just without any data
+			for(LumpInfo lump: info)
+				addLump(lump);
+		}
+		finally {
+			
+			in.close();
+		}
 	}
 	
 	/**
-	 * Retrieves the lump with the specified name from this WAD file.
+	 * Memory maps the WAD at the specified location. Only the directory is read up front,
+	 * lumps are sliced from the mapping as they are requested.
+	 * @param path The location of the WAD file.
+	 * @throws IOException If there is an error mapping the specified file.
+	 */
+	public WadFile(Path path) throws IOException {
+		
+		this(map(path));
+	}
+	
+	/**
+	 * Reads a WAD from the specified buffer, such as a memory mapped file or an uncompressed entry
+	 * in an archive. No lump data is copied, lumps are returned as views into the specified buffer.
+	 * @param data The buffer containing the entire WAD file, from its current position to its limit.
+	 * @throws IOException If the specified buffer does not contain a valid WAD file.
+	 */
+	public WadFile(ByteBuffer data) throws IOException {
+		
+		ByteBuffer wad = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		if(wad.remaining() < 12)
+			throw new IOException("Invalid WAD file");
+		
+		ByteReader reader = new ByteReader(wad);
+		iwad = readFileType(reader);
+		
+		int entries = reader.readInt();
+		int directoryLocation = reader.readInt();
+		if(entries < 0 || directoryLocation < 0 || directoryLocation + ((long) entries << 4) > wad.limit())
+			throw new IOException("Invalid WAD directory");
+		
+		//Only the directory is read, lump data stays where it is until it's asked for
+		reader.setPosition(directoryLocation);
+		for(int i = 0; i < entries; ++i) {
+			
+			LumpInfo info = new LumpInfo(wad, reader.readInt(), reader.readInt(), reader.readString(8));
+			if(info.start < 0 || info.length < 0 || (long) info.start + info.length > wad.limit())
+				throw new IOException("Lump " + info.name + " lies outside of the WAD file");
+			
+			addLump(info);
+		}
+	}
+	
+	/**
+	 * Retrieves the lump with the specified name from this WAD file. If more than one lump
+	 * has the specified name, the last one in the directory is returned.
 	 * @param name The name of the lump, case-insensitive.
-	 * @return The byte array representation of this lump, or null if the lump does not exist.
+	 * @return A read-only view of this lump, or null if the lump does not exist.
+	 */
+	@Override
+	public ByteBuffer getLump(String name) {
+		
+		LumpInfo info = lumps.get(name.toUpperCase());
+		if(info == null)
+			return null;
+		
+		return info.slice();
+	}
+	
+	/**
+	 * Finds every map in this WAD file, in the order they appear in the directory.
+	 * A UDMF map is made of the lumps following a marker lump, starting with TEXTMAP and ending at ENDMAP.
+	 * A binary map is made of the lumps following a marker lump, starting with THINGS and continuing for
+	 * as long as the lumps have the names of binary map lumps.
+	 * @return The list of maps, which is empty if this WAD contains no maps.
 	 */
-	public byte[] getLump(String name) {
+	public ArrayList<WadMap> getMaps() {
 		
-		return lumps.get(name.toUpperCase());
+		ArrayList<WadMap> maps = new ArrayList<>();
+		for(int i = 0; i + 1 < directory.size(); ++i) {
+			
+			String first = directory.get(i + 1).name.toUpperCase();
+			boolean udmf = first.equals("TEXTMAP");
+			if(!udmf && !first.equals("THINGS"))
+				continue;
+			
+			String name = directory.get(i).name;
+			HashMap<String, ByteBuffer> lumps = new HashMap<>();
+			HashSet<String> names = new HashSet<>();
+			for(++i; i < directory.size(); ++i) {
+			
+				LumpInfo lump = directory.get(i);
+				String lumpName = lump.name.toUpperCase();
+				if(udmf ? lumpName.equals("ENDMAP") : !binaryMapLumps.contains(lumpName))
+					break;
+				
+				names.add(lumpName);
+				if(lump.source != null)
+					lumps.put(lumpName, lump.slice());
+			}
+			
+			//Binary maps don't have an end marker, so the lump we stopped at might be the start of the next map
+			if(!udmf)
+				--i;
+			
+			maps.add(new WadMap(name, lumps, names));
+		}
+		
+		return maps;
+	}
+	
+	/**
+	 * Adds a lump to the end of the directory.
+	 * @param info The lump to add, whose source is null if its data was not retained.
+	 */
+	private void addLump(LumpInfo info) {
+		
+		directory.add(info);
+		if(info.source != null)
+			lumps.put(info.name.toUpperCase(), info);
+	}
+	
+	/**
+	 * Reads the file type from the header of a WAD file.
+	 * @param reader The reader positioned at the start of the WAD file.
+	 * @return True if the WAD is an IWAD, false if it is a PWAD.
+	 * @throws IOException If the header does not specify a valid WAD type.
+	 */
+	private static boolean readFileType(ByteReader reader) throws IOException {
+		
+		String fileType = reader.readString(4);
+		
+		if(fileType.equals("PWAD"))
+			return false;
+		else if(fileType.equals("IWAD"))
+			return true;
+		else
+			throw new IOException("Invalid WAD file");
 	}
 	
 	/**
-	 * Reads a lump from the two chunks of the WAD file.
-	 * @param start The location of the first byte in this lump.
-	 * @param length The length of this lump, in bytes.
-	 * @param directorySize The size of the directory.
-	 * @param part1 The first half of our file's data (pre directory).
-	 * @param part2 The second half of our file's data (post directory).
-	 * @return A byte array representing this lump's data.
+	 * Reads exactly the specified number of bytes from an InputStream.
+	 * @param in The InputStream to read from.
+	 * @param length The number of bytes to read.
+	 * @return The bytes that were read.
+	 * @throws IOException If the end of the stream is reached before all the bytes are read.
 	 */
-	private byte[] readEntry(int start, int length, int directorySize, byte[] part1, byte[] part2) {
+	private static byte[] readFully(InputStream in, int length) throws IOException {
 		
 		byte[] data = new byte[length];
-		int position = 0;
-		start -= 12;
+		for(int read = 0; read < length;) {
+			
+			int count = in.read(data, read, length - read);
+			if(count == -1)
+				throw new IOException("Unexpected end of WAD file");
+			
+			read += count;
+		}
 		
-		if(start < part1.length) {
+		return data;
+	}
+	
+	/**
+	 * Discards exactly the specified number of bytes from an InputStream.
+	 * @param in The InputStream to skip.
+	 * @param length The number of bytes to discard.
+	 * @throws IOException If the end of the stream is reached before all the bytes are skipped.
+	 */
+	private static void skipFully(InputStream in, long length) throws IOException {
+		
+		while(length > 0) {
+			
+			long skipped = in.skip(length);
+			if(skipped <= 0) {
+				
+				//Skip may give up early without being at the end of the stream, so check by reading
+				if(in.read() == -1)
+					throw new IOException("Unexpected end of WAD file");
+				
+				skipped = 1;
+			}
 			
-			int end = start + length;
-			for(int i = start; i < end; ++i)
-				data[position++] = part1[i];
+			length -= skipped;
 		}
-		else {
+	}
+	
+	/**
+	 * Memory maps the specified file as read-only.
+	 * @param path The location of the file.
+	 * @return The mapped contents of the file.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	private static ByteBuffer map(Path path) throws IOException {
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("WAD file " + path + " is too large to be mapped");
 			
-			start -= directorySize + part1.length;
-			int end = start + length;
-			for(int i = start; i < end; ++i)
-				data[position++] = part2[i];
+			//The mapping remains valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
 		}
+	}
+	
+	/**
+	 * A source of WAD data that can be read from the start more than once.
+	 */
+	public interface StreamSource {
 		
-		return data;
+		/**
+		 * Opens a new InputStream positioned at the start of the WAD data.
+		 * @return The newly opened InputStream.
+		 * @throws IOException If the source cannot be opened.
+		 */
+		public InputStream open() throws IOException;
 	}
 	
 	/**
@@ -108,6 +365,7 @@ public class WadFile {
 	 */
 	private static class LumpInfo{
 		
+		private final ByteBuffer source;
 		private final int start;
 		private final int length;
 		private final String name;
@@ -115,9 +373,25 @@ public class WadFile {
 		
 		private LumpInfo(int start, int length, String name) {
 			
+			this(null, start, length, name);
+		}
+		
+		
+		private LumpInfo(ByteBuffer source, int start, int length, String name) {
+			
+			this.source = source;
 			this.name = name;
 			this.start = start;
 			this.length = length;
 		}
+		
+		/**
+		 * Creates a read-only view of this lump's data without copying it.
+		 * @return The view of this lump.
+		 */
+		private ByteBuffer slice() {
+			
+			return source.duplicate().limit(start + length).position(start).slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+		}
 	}
 }
@@ -0,0 +1,63 @@
+package me.michael4797.wad;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * The group of lumps making up a single map within a WAD file, everything after the map's
+ * marker lump up to its ENDMAP lump, or up to the last lump of a binary format map.
+ */
+public class WadMap implements LumpContainer{
+
+	private final HashMap<String, ByteBuffer> lumps;
+	private final HashSet<String> names;
+	public final String name;
+	
+	/**
+	 * Constructs a map from the lumps found after its marker.
+	 * @param name The name of the map's marker lump.
+	 * @param lumps The map's lumps whose data was retained, keyed by their upper-cased names.
+	 * @param names The upper-cased names of all of the map's lumps, even those whose data was not retained.
+	 */
+	WadMap(String name, HashMap<String, ByteBuffer> lumps, HashSet<String> names) {
+		
+		this.name = name;
+		this.lumps = lumps;
+		this.names = names;
+	}
+	
+	/**
+	 * Checks if this map has a lump with the specified name, even if that lump's data was not retained.
+	 * @param name The name of the lump, case-insensitive.
+	 * @return True if the lump is part of this map.
+	 */
+	public boolean contains(String name) {
+		
+		return names.contains(name.toUpperCase());
+	}
+	
+	/**
+	 * Checks if this map is stored in the UDMF format, rather than one of the binary formats.
+	 * @return True if this map has a TEXTMAP lump.
+	 */
+	public boolean isUniversal() {
+		
+		return contains("TEXTMAP");
+	}
+	
+	
+	@Override
+	public ByteBuffer getLump(String name) {
+		
+		ByteBuffer lump = lumps.get(name.toUpperCase());
+		return lump != null ? lump.duplicate().order(lump.order()) : null;
+	}
+	
+	
+	@Override
+	public String toString() {
+		
+		return name;
+	}
+}
@@ -0,0 +1,214 @@
+package me.michael4797.udmf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import me.michael4797.acs.ScriptFile;
+import me.michael4797.parse.Token;
+import me.michael4797.wad.WadFile;
+import me.michael4797.wad.WadMap;
+
+/**
+ * Stress test for parsing on many threads at once, with every parse sharing the static Grammars of UniversalDoomMap and ScriptFile.
+ * The same map is loaded over and over on a pool of threads, its TEXTMAP lump both read directly and parsed with the TEXTMAP Grammar,
+ * and its SCRIPTS lump parsed with the ACS Grammar. Every result is checked against the same map loaded on a single thread first.
+ * Usage: ConcurrentParseTest [threads] [parses]
+ */
+public class ConcurrentParseTest {
+
+	public static void main(String[] args) throws Exception {
+		
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int parses = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+		
+		WadFile wad = new WadFile(createWad(createTextMap(2000), createScripts(100)));
+		WadMap map = wad.getMaps().get(0);
+		
+		int failures = 0;
+		for(boolean useGrammar: new boolean[] {false, true}) {
+			
+			//The switch is global, so each way of reading TEXTMAP gets a run of its own
+			UniversalDoomMap.setUseGrammar(useGrammar);
+			String expectedMap = describe(new UniversalDoomMap(wad, map));
+			String expectedScripts = describe(new ScriptFile(map).getAbstractSyntaxTree());
+			
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			ArrayList<Future<Boolean>> results = new ArrayList<>();
+			for(int i = 0; i < parses; ++i) {
+				
+				//Alternate between the two Grammars so each is used by several threads at once
+				if(i % 2 == 0)
+					results.add(executor.submit(() -> describe(new UniversalDoomMap(wad, map)).equals(expectedMap)));
+				else
+					results.add(executor.submit(() -> describe(new ScriptFile(map).getAbstractSyntaxTree()).equals(expectedScripts)));
+			}
+			
+			int passed = 0;
+			for(Future<Boolean> result: results) {
+				
+				try {
+					
+					if(result.get())
+						++passed;
+				} catch (ExecutionException e) {
+					
+					e.getCause().printStackTrace();
+				}
+			}
+			
+			executor.shutdown();
+			failures += parses - passed;
+			System.out.println((useGrammar ? "Grammar" : "Reader") + ": " + passed + " of " + parses + " parses matched on " + threads + " threads");
+		}
+		
+		if(failures > 0) {
+			
+			System.out.println("FAILED");
+			System.exit(1);
+		}
+		
+		System.out.println("PASSED");
+	}
+	
+	/**
+	 * Builds a TEXTMAP lump with every kind of token TEXTMAP has.
+	 * @param blocks The number of blocks of each type.
+	 * @return The lump.
+	 */
+	private static String createTextMap(int blocks) {
+		
+		StringBuilder textMap = new StringBuilder("namespace = \"zdoom\";\n// comment line\n/* block\n comment */\n");
+		for(int i = 0; i < blocks; ++i) {
+			
+			textMap.append("vertex { x = ").append(i * 16).append(".0; y = -").append(i % 97).append(".5e1; }\n");
+			textMap.append("linedef { v1 = ").append(i).append("; v2 = ").append(i + 1).append("; sidefront = 0x").append(Integer.toHexString(i))
+					.append("; blocking = ").append(i % 2 == 0).append("; comment = \"line ").append(i).append(" \\\" }\"; }\n");
+		}
+		
+		return textMap.toString();
+	}
+	
+	/**
+	 * Builds a SCRIPTS lump with a mix of statements and operators.
+	 * @param scripts The number of scripts.
+	 * @return The lump.
+	 */
+	private static String createScripts(int scripts) {
+		
+		StringBuilder source = new StringBuilder("#include \"zcommon.acs\"\n#define PIT 5\n/* multi\n   line */\n");
+		for(int i = 1; i <= scripts; ++i) {
+			
+			source.append("script ").append(i).append(" OPEN {\n");
+			source.append("  int x = ").append(i).append(" + 2 * 3 - (4 / 2) << 1 & 255 | ").append(i).append(" ^ 3 % 2;\n");
+			source.append("  if (x > 3 && x != 7 || !x) { x += 1; } else x--;\n");
+			source.append("  Sector_SetDamage(PIT, 10000, 0);\n");
+			source.append("  print(s:\"hi\", d:x);\n");
+			source.append("}\n");
+		}
+		
+		return source.toString();
+	}
+	
+	/**
+	 * Builds a wad containing a single UDMF map.
+	 * @param textMap The TEXTMAP lump.
+	 * @param scripts The SCRIPTS lump.
+	 * @return The wad.
+	 */
+	private static ByteBuffer createWad(String textMap, String scripts) {
+		
+		String[] names = {"MAP01", "TEXTMAP", "SCRIPTS", "ENDMAP"};
+		byte[][] lumps = {new byte[0], textMap.getBytes(StandardCharsets.ISO_8859_1), scripts.getBytes(StandardCharsets.ISO_8859_1), new byte[0]};
+		
+		int size = 12;
+		for(byte[] lump: lumps)
+			size += lump.length;
+		
+		ByteBuffer wad = ByteBuffer.allocate(size + names.length * 16).order(ByteOrder.LITTLE_ENDIAN);
+		wad.put("PWAD".getBytes(StandardCharsets.ISO_8859_1)).putInt(names.length).putInt(size);
+		for(byte[] lump: lumps)
+			wad.put(lump);
+		
+		int position = 12;
+		for(int i = 0; i < names.length; ++i) {
+			
+			byte[] name = new byte[8];
+			byte[] chars = names[i].getBytes(StandardCharsets.ISO_8859_1);
+			System.arraycopy(chars, 0, name, 0, chars.length);
+			wad.putInt(position).putInt(lumps[i].length).put(name);
+			position += lumps[i].length;
+		}
+		
+		wad.flip();
+		return wad;
+	}
+	
+	/**
+	 * Describes every block of a map and all of their properties.
+	 * @param map The map.
+	 * @return The description.
+	 */
+	private static String describe(UniversalDoomMap map) {
+		
+		StringBuilder description = new StringBuilder(map.mapCode).append(' ').append(map.getNamespace()).append('\n');
+		for(String type: new TreeSet<>(map.getBlockTypes())) {
+			
+			for(Block block: map.getBlocks(type)) {
+				
+				description.append(type);
+				for(String key: new TreeSet<>(block.getKeys())) {
+					
+					Value value = block.getValue(key);
+					description.append(' ').append(key).append('=');
+					if(value instanceof BooleanValue)
+						description.append(value.asBoolean());
+					else if(value instanceof IntegerValue)
+						description.append(value.asInteger());
+					else if(value instanceof FloatValue)
+						description.append(value.asFloat());
+					else
+						description.append('"').append(value.asString()).append('"');
+				}
+				
+				description.append('\n');
+			}
+		}
+		
+		return description.toString();
+	}
+	
+	/**
+	 * Describes a token and all of its children.
+	 * @param token The token.
+	 * @return The description.
+	 */
+	private static String describe(Token token) {
+		
+		StringBuilder description = new StringBuilder();
+		describe(token, description);
+		return description.toString();
+	}
+	
+	
+	private static void describe(Token token, StringBuilder description) {
+		
+		if(token.getChildCount() == -1) {
+			
+			description.append(token.name).append(':').append(token.getValue()).append(' ');
+			return;
+		}
+		
+		description.append(token.name).append('(');
+		for(int i = 0; i < token.getChildCount(); ++i)
+			describe(token.getChild(i), description);
+		
+		description.append(')');
+	}
+}